@@ -0,0 +1,10 @@
+package one.nio.http;
+
+import java.io.IOException;
+
+// Receives a request body as it arrives instead of having it buffered in the Request.
+// The data passed to onData() is only valid during the call
+public interface BodyConsumer {
+    void onData(byte[] data, int offset, int length) throws IOException;
+    void onComplete() throws IOException;
+}
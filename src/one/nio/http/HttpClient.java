@@ -17,7 +17,7 @@ public class HttpClient extends SocketPool {
 
     public HttpClient(ConnectionString conn) throws IOException {
         super(conn, 80);
-        this.hostHeader = "Host: " + conn.getHost();
+        this.hostHeader = "Host: " + (Socket.isUnixAddress(conn.getHost()) ? "localhost" : conn.getHost());
         this.connectionHeader = conn.getBooleanParam("keepalive", true) ? "Connection: Keep-Alive" : "Connection: close";
     }
 
@@ -101,8 +101,9 @@ public class HttpClient extends SocketPool {
                 String contentLength = response.getHeader("Content-Length: ");
                 if (contentLength != null) {
                     byte[] body = new byte[Integer.parseInt(contentLength)];
-                    int contentBytes = length - pos;
+                    int contentBytes = Math.min(length - pos, body.length);
                     System.arraycopy(buf, pos, body, 0, contentBytes);
+                    pos += contentBytes;
                     if (contentBytes < body.length) {
                         socket.readFully(body, contentBytes, body.length - contentBytes);
                     }
@@ -125,7 +126,13 @@ public class HttpClient extends SocketPool {
             do {
                 if (pos == length) {
                     if (pos >= buf.length) {
-                        throw new HttpException("Line too long");
+                        if (lineStart == 0) {
+                            throw new HttpException("Line too long");
+                        }
+                        // Make room by dropping what has been read before the line
+                        System.arraycopy(buf, lineStart, buf, 0, length -= lineStart);
+                        pos -= lineStart;
+                        lineStart = 0;
                     }
                     length += socket.read(buf, pos, buf.length - pos);
                 }
@@ -8,28 +8,51 @@ import one.nio.net.Socket;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.HashMap;
 
 public class HttpServer extends Server {
-    protected final HashMap<String, RequestHandler> requestHandlers = new HashMap<String, RequestHandler>();
+    private static final int DEFAULT_MAX_BODY_SIZE = 1024 * 1024;
+
+    protected final PathRouter requestHandlers = new PathRouter();
+
+    // Larger request bodies are rejected unless streamed with createBodyConsumer()
+    protected volatile int maxBodySize;
 
     public HttpServer(ConnectionString conn, Object... routers) throws IOException {
         super(conn);
+        this.maxBodySize = conn.getIntParam("maxBodySize", DEFAULT_MAX_BODY_SIZE);
         addRequestHandlers(this);
         for (Object router : routers) {
             addRequestHandlers(router);
         }
     }
 
+    @Override
+    public boolean reconfigure(ConnectionString conn) throws IOException {
+        if (!super.reconfigure(conn)) {
+            return false;
+        }
+        maxBodySize = conn.getIntParam("maxBodySize", DEFAULT_MAX_BODY_SIZE);
+        return true;
+    }
+
     @Override
     public HttpSession createSession(Socket socket) {
         return new HttpSession(socket, this);
     }
 
+    // Called for requests with a body once the headers are read. A non-null consumer gets the body
+    // as it arrives and is responsible for the response; otherwise the body is buffered and
+    // the request goes to handleRequest() as usual
+    public BodyConsumer createBodyConsumer(Request request, HttpSession session) {
+        return null;
+    }
+
     public void handleRequest(Request request, HttpSession session) throws IOException {
-        RequestHandler requestHandler = requestHandlers.get(request.getPath());
+        RequestHandler requestHandler = requestHandlers.find(request);
         if (requestHandler != null) {
+            long startTime = System.nanoTime();
             requestHandler.handleRequest(request, session);
+            recordHandlerTime(System.nanoTime() - startTime);
         } else {
             handleDefault(request, session);
         }
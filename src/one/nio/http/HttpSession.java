@@ -8,31 +8,88 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.io.IOException;
+import java.net.SocketException;
+import java.util.Arrays;
 
 public class HttpSession extends Session {
     private static final Log log = LogFactory.getLog(HttpSession.class);
 
     private static final int MAX_HEADERS = 32;
     private static final int MAX_FRAGMENT_LENGTH = 2048;
+    private static final int INITIAL_CHUNKED_BODY = 8192;
+
+    private static final int CHUNK_SIZE    = 1;
+    private static final int CHUNK_DATA    = 2;
+    private static final int CHUNK_END     = 3;
+    private static final int CHUNK_TRAILER = 4;
+
+    private static final byte[] CONTINUE = Utf8.toBytes("HTTP/1.1 100 Continue\r\n\r\n");
 
     protected final HttpServer server;
     private byte[] fragment;
     private int fragmentLength;
     private Request request;
 
+    // Body of the current request: bytes left of Content-Length or of the current chunk
+    private long bodyRemaining;
+    private int chunkState;
+    private byte[] body;
+    private int bodyLength;
+    private BodyConsumer bodyConsumer;
+    private boolean discardBody;
+
+    // Pipelined requests are numbered as they are dispatched. A response completed ahead of its turn
+    // waits in a ring indexed by the sequence; responses ready during one read go out in one write
+    private long requestSequence;
+    private long responseSequence;
+    private byte[][] completed;
+    private boolean[] completedClose;
+    private byte[][] batch;
+    private int batchCount;
+    private boolean batching;
+    private boolean closeAfterBatch;
+
+    // Request being handled by the reading thread, which writeError() called from its handler answers
+    private Thread dispatchThread;
+    private long dispatchedSequence;
+
     public HttpSession(Socket socket, HttpServer server) {
         super(socket);
         this.server = server;
         this.fragment = new byte[MAX_FRAGMENT_LENGTH];
     }
 
+    @Override
+    public synchronized boolean isIdle() {
+        return request == null && fragmentLength == 0 && responseSequence == requestSequence && super.isIdle();
+    }
+
     @Override
     protected void processRead(byte[] buffer) throws IOException {
+        beginBatch();
+        try {
+            processHttp(buffer);
+        } finally {
+            endBatch();
+        }
+    }
+
+    private void processHttp(byte[] buffer) throws IOException {
+        // The rest of a buffered body is read right into place
+        if (bodyRemaining > 0 && body != null && chunkState == 0) {
+            int bytesRead = read(body, bodyLength, (int) bodyRemaining);
+            bodyLength += bytesRead;
+            if ((bodyRemaining -= bytesRead) == 0) {
+                completeRequest();
+            }
+            return;
+        }
+
         int length = fragmentLength;
         if (length > 0) {
             System.arraycopy(fragment, 0, buffer, 0, length);
         }
-        length += socket.read(buffer, length, buffer.length - length);
+        length += read(buffer, length, buffer.length - length);
 
         try {
             int processed = processHttpBuffer(buffer, length);
@@ -48,29 +105,203 @@ public class HttpSession extends Session {
             if (log.isDebugEnabled()) {
                 log.debug("Bad request", e);
             }
-            writeError(Response.BAD_REQUEST, e.getMessage());
+            rejectRequest(Response.BAD_REQUEST, e.getMessage());
         }
     }
 
     private int processHttpBuffer(byte[] buffer, int length) throws IOException, HttpException {
         int lineStart = 0;
-        for (int i = 1; i < length; i++) {
-            if (buffer[i] == '\n') {
-                int lineLength = i - lineStart - (buffer[i - 1] == '\r' ? 1 : 0);
-                if (request == null) {
-                    request = parseRequest(buffer, lineStart, lineLength);
-                } else if (lineLength > 0) {
-                    request.addHeader(Utf8.read(buffer, lineStart, lineLength));
-                } else {
-                    server.handleRequest(request, this);
-                    request = null;
+        while (lineStart < length) {
+            if (bodyRemaining > 0) {
+                int bytes = (int) Math.min(bodyRemaining, length - lineStart);
+                consumeBody(buffer, lineStart, bytes);
+                lineStart += bytes;
+                if ((bodyRemaining -= bytes) == 0) {
+                    if (chunkState == CHUNK_DATA) {
+                        chunkState = CHUNK_END;
+                    } else {
+                        completeRequest();
+                    }
                 }
-                lineStart = i + 1;
+                continue;
             }
+
+            int i = lineStart;
+            while (i < length && buffer[i] != '\n') {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+
+            int lineLength = i - lineStart - (i > lineStart && buffer[i - 1] == '\r' ? 1 : 0);
+            if (request == null) {
+                request = parseRequest(buffer, lineStart, lineLength);
+            } else if (chunkState != 0) {
+                processChunkLine(buffer, lineStart, lineLength);
+            } else if (lineLength > 0) {
+                request.addHeader(buffer, lineStart, lineLength);
+            } else {
+                startBody();
+            }
+            lineStart = i + 1;
         }
         return lineStart;
     }
 
+    // Called at the end of headers. A body is streamed to the consumer provided by the server, if any,
+    // otherwise buffered up to maxBodySize and attached to the request
+    private void startBody() throws IOException, HttpException {
+        boolean chunked = request.headerEqualsIgnoreCase("Transfer-Encoding: ", "chunked");
+        long contentLength = chunked ? 0 : parseContentLength(request.getHeader("Content-Length: "));
+        if (!chunked && contentLength == 0) {
+            completeRequest();
+            return;
+        }
+
+        boolean expectContinue = request.headerEqualsIgnoreCase("Expect: ", "100-continue");
+        bodyConsumer = server.createBodyConsumer(request, this);
+        if (bodyConsumer == null) {
+            if (contentLength > server.maxBodySize) {
+                rejectBody();
+            } else {
+                body = new byte[chunked ? Math.min(INITIAL_CHUNKED_BODY, server.maxBodySize) : (int) contentLength];
+            }
+        }
+
+        // Before a streamed request takes its sequence: 100 Continue goes out only if no response is outstanding
+        if (expectContinue && !discardBody) {
+            writeContinue();
+        }
+        if (bodyConsumer != null) {
+            request.sequence = nextSequence();
+        }
+
+        if (chunked) {
+            chunkState = CHUNK_SIZE;
+        } else {
+            bodyRemaining = contentLength;
+        }
+    }
+
+    private void processChunkLine(byte[] buffer, int start, int length) throws IOException, HttpException {
+        if (chunkState == CHUNK_SIZE) {
+            long chunkSize = parseChunkSize(buffer, start, length);
+            if (chunkSize == 0) {
+                chunkState = CHUNK_TRAILER;
+            } else {
+                bodyRemaining = chunkSize;
+                chunkState = CHUNK_DATA;
+            }
+        } else if (chunkState == CHUNK_END) {
+            if (length != 0) {
+                throw new HttpException("Invalid chunk");
+            }
+            chunkState = CHUNK_SIZE;
+        } else if (length == 0) {
+            // Trailer headers are ignored
+            completeRequest();
+        }
+    }
+
+    private void consumeBody(byte[] data, int offset, int length) throws IOException {
+        if (bodyConsumer != null) {
+            bodyConsumer.onData(data, offset, length);
+        } else if (body != null) {
+            int newLength = bodyLength + length;
+            if (newLength > body.length) {
+                if (newLength > server.maxBodySize) {
+                    rejectBody();
+                    return;
+                }
+                body = Arrays.copyOf(body, Math.min(Math.max(body.length * 2, newLength), server.maxBodySize));
+            }
+            System.arraycopy(data, offset, body, bodyLength, length);
+            bodyLength = newLength;
+        }
+    }
+
+    // The rest of the body is read and dropped; the connection is closed after the error response
+    private void rejectBody() throws IOException {
+        body = null;
+        discardBody = true;
+        rejectRequest(Response.REQUEST_ENTITY_TOO_LARGE, null);
+    }
+
+    private void completeRequest() throws IOException {
+        Request request = this.request;
+        BodyConsumer bodyConsumer = this.bodyConsumer;
+        byte[] body = this.body;
+        int bodyLength = this.bodyLength;
+        boolean discardBody = this.discardBody;
+
+        this.request = null;
+        this.chunkState = 0;
+        this.body = null;
+        this.bodyLength = 0;
+        this.bodyConsumer = null;
+        this.discardBody = false;
+
+        if (discardBody) {
+            return;
+        }
+
+        if (bodyConsumer == null) {
+            if (body != null) {
+                request.setBody(bodyLength == body.length ? body : Arrays.copyOf(body, bodyLength));
+            }
+            request.sequence = nextSequence();
+        }
+
+        dispatchThread = Thread.currentThread();
+        dispatchedSequence = request.sequence;
+        try {
+            if (bodyConsumer != null) {
+                bodyConsumer.onComplete();
+            } else {
+                server.handleRequest(request, this);
+            }
+        } finally {
+            dispatchThread = null;
+        }
+    }
+
+    private static long parseContentLength(String value) throws HttpException {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            long contentLength = Long.parseLong(value.trim());
+            if (contentLength >= 0) {
+                return contentLength;
+            }
+        } catch (NumberFormatException e) {
+            // Fall through
+        }
+        throw new HttpException("Invalid Content-Length");
+    }
+
+    // Chunk extensions after ';' are ignored
+    private static long parseChunkSize(byte[] buffer, int start, int length) throws HttpException {
+        long size = 0;
+        int digits = 0;
+        for (int end = start + length; start < end; start++, digits++) {
+            int b = buffer[start];
+            int digit = b >= '0' && b <= '9' ? b - '0' : (b | 0x20) >= 'a' && (b | 0x20) <= 'f' ? (b | 0x20) - 'a' + 10 : -1;
+            if (digit < 0) {
+                if (b == ';' || b == ' ' || b == '\t') {
+                    break;
+                }
+                throw new HttpException("Invalid chunk size");
+            }
+            size = size << 4 | digit;
+        }
+        if (digits == 0 || digits > 15) {
+            throw new HttpException("Invalid chunk size");
+        }
+        return size;
+    }
+
     protected Request parseRequest(byte[] buffer, int start, int length) throws HttpException {
         if (length > 13 && Utf8.startsWith(Request.VERB_GET, buffer, start)) {
             return new Request(Request.METHOD_GET, Utf8.read(buffer, start + 4, length - 13), MAX_HEADERS);
@@ -84,21 +315,169 @@ public class HttpSession extends Session {
         throw new HttpException("Invalid request");
     }
 
+    // Responses may come from any thread, in any order
     public void writeResponse(Request request, Response response) throws IOException {
         server.incRequestsProcessed();
-        boolean close = "close".equalsIgnoreCase(request.getHeader("Connection: "));
+        boolean close = request.headerEqualsIgnoreCase("Connection: ", "close");
         response.addHeader(close ? "Connection: close" : "Connection: Keep-Alive");
         byte[] bytes = response.toBytes(request.getMethod() != Request.METHOD_HEAD);
-        super.write(bytes, 0, bytes.length);
-        if (close) scheduleClose();
+        server.recordResponseSize(bytes.length);
+        writeInOrder(request.sequence, bytes, close);
     }
 
+    // Answers the request with an error and ends the connection; responses to later requests are dropped
+    public void writeError(Request request, String code, String message) throws IOException {
+        writeInOrder(request.sequence, errorResponse(code, message), true);
+    }
+
+    // Ends the connection after answering the request whose handler calls it. Called from another thread,
+    // the error replaces the response to the oldest request still being handled, which is not necessarily
+    // the failed one: use writeError(Request, String, String) instead
+    @Deprecated
     public void writeError(String code, String message) throws IOException {
+        byte[] bytes = errorResponse(code, message);
+        if (dispatchThread == Thread.currentThread()) {
+            writeInOrder(dispatchedSequence, bytes, true);
+            return;
+        }
+
+        synchronized (this) {
+            long sequence = responseSequence;
+            if (completed != null) {
+                while (sequence < requestSequence && completed[(int) sequence & (completed.length - 1)] != null) {
+                    sequence++;
+                }
+            }
+            if (sequence == requestSequence) {
+                requestSequence++;
+            }
+            writeInOrder(sequence, bytes, true);
+        }
+    }
+
+    // A protocol error goes out after the responses to all requests dispatched before it
+    private void rejectRequest(String code, String message) throws IOException {
+        writeInOrder(nextSequence(), errorResponse(code, message), true);
+    }
+
+    private byte[] errorResponse(String code, String message) {
         server.incRequestsRejected();
         Response response = new Response(code, message == null ? Response.EMPTY : Utf8.toBytes(message));
         response.addHeader("Connection: close");
-        byte[] bytes = response.toBytes(true);
-        super.write(bytes, 0, bytes.length);
-        scheduleClose();
+        return response.toBytes(true);
+    }
+
+    private synchronized long nextSequence() {
+        return requestSequence++;
+    }
+
+    private synchronized void writeInOrder(long sequence, byte[] bytes, boolean close) throws IOException {
+        if (sequence < responseSequence) {
+            if (closing) {
+                throw new SocketException("Socket closed");
+            }
+            throw new IllegalStateException("Response already sent");
+        }
+
+        if (sequence != responseSequence) {
+            int ahead = (int) (sequence - responseSequence);
+            if (completed == null || ahead >= completed.length) {
+                growCompleted(ahead + 1);
+            }
+            int index = (int) sequence & (completed.length - 1);
+            completed[index] = bytes;
+            completedClose[index] = close;
+            return;
+        }
+
+        addToBatch(bytes, close);
+        responseSequence++;
+        if (completed != null) {
+            for (;;) {
+                int index = (int) responseSequence & (completed.length - 1);
+                if (completed[index] == null || closeAfterBatch) {
+                    break;
+                }
+                addToBatch(completed[index], completedClose[index]);
+                completed[index] = null;
+                responseSequence++;
+            }
+        }
+
+        if (!batching) {
+            flushBatch();
+        }
+    }
+
+    private void growCompleted(int minCapacity) {
+        int capacity = completed == null ? 8 : completed.length;
+        while (capacity < minCapacity) {
+            capacity *= 2;
+        }
+
+        byte[][] newCompleted = new byte[capacity][];
+        boolean[] newCompletedClose = new boolean[capacity];
+        if (completed != null) {
+            for (long sequence = responseSequence; sequence < responseSequence + completed.length; sequence++) {
+                int index = (int) sequence & (completed.length - 1);
+                newCompleted[(int) sequence & (capacity - 1)] = completed[index];
+                newCompletedClose[(int) sequence & (capacity - 1)] = completedClose[index];
+            }
+        }
+        completed = newCompleted;
+        completedClose = newCompletedClose;
+    }
+
+    // An interim response can only be sent while no earlier response is outstanding; otherwise
+    // it is skipped and the client sends the body after its own timeout
+    private synchronized void writeContinue() throws IOException {
+        if (responseSequence == requestSequence) {
+            addToBatch(CONTINUE, false);
+            if (!batching) {
+                flushBatch();
+            }
+        }
+    }
+
+    private void addToBatch(byte[] bytes, boolean close) {
+        if (batch == null) {
+            batch = new byte[8][];
+        } else if (batchCount == batch.length) {
+            batch = Arrays.copyOf(batch, batchCount * 2);
+        }
+        batch[batchCount++] = bytes;
+        closeAfterBatch |= close;
+    }
+
+    private synchronized void beginBatch() {
+        batching = true;
+    }
+
+    private synchronized void endBatch() throws IOException {
+        batching = false;
+        if (batchCount > 0) {
+            flushBatch();
+        }
+    }
+
+    private void flushBatch() throws IOException {
+        int count = batchCount;
+        boolean close = closeAfterBatch;
+        batchCount = 0;
+        closeAfterBatch = false;
+
+        try {
+            if (count == 1) {
+                super.write(batch[0], 0, batch[0].length);
+            } else {
+                super.write(batch, count);
+            }
+        } finally {
+            Arrays.fill(batch, 0, count, null);
+        }
+
+        if (close) {
+            scheduleClose();
+        }
     }
 }
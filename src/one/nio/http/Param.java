@@ -0,0 +1,15 @@
+package one.nio.http;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Binds an argument of an @HttpHandler method to a {name} segment of the path pattern or to a query parameter.
+// Supported types are String, int, long, boolean, double and their wrappers; a missing or malformed value
+// of a primitive type is answered with 400 Bad Request, a missing value of other types is null
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface Param {
+    String value();
+}
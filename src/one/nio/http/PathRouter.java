@@ -0,0 +1,122 @@
+package one.nio.http;
+
+import one.nio.util.URLEncoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Finds request handlers by path without cutting the path into substrings.
+// Patterns are split at '/' into a trie of segments; a segment of the form {name} matches
+// any single path segment, whose decoded value is passed to the request as a path parameter.
+// Literal segments take precedence over parameters
+public final class PathRouter {
+    private final Node root = new Node();
+    private int maxParameters;
+
+    public void put(String pattern, RequestHandler handler) {
+        if (!pattern.startsWith("/")) {
+            throw new IllegalArgumentException("Path pattern should start with '/': " + pattern);
+        }
+
+        Node node = root;
+        ArrayList<String> names = new ArrayList<String>(2);
+        for (String segment : pattern.substring(1).split("/", -1)) {
+            if (segment.length() > 2 && segment.startsWith("{") && segment.endsWith("}")) {
+                names.add(segment.substring(1, segment.length() - 1));
+                if (node.parameter == null) {
+                    node.parameter = new Node();
+                }
+                node = node.parameter;
+            } else {
+                node = node.child(segment);
+            }
+        }
+
+        node.handler = handler;
+        node.parameterNames = names.isEmpty() ? null : names.toArray(new String[names.size()]);
+        maxParameters = Math.max(maxParameters, names.size());
+    }
+
+    // Path parameters of the matched pattern are attached to the request
+    public RequestHandler find(Request request) {
+        String uri = request.getURI();
+        if (!uri.startsWith("/")) {
+            return null;
+        }
+
+        int end = uri.indexOf('?');
+        if (end < 0) {
+            end = uri.length();
+        }
+
+        int[] bounds = maxParameters > 0 ? new int[maxParameters * 2] : null;
+        Node node = match(root, uri, 1, end, bounds, 0);
+        if (node == null) {
+            return null;
+        }
+
+        String[] names = node.parameterNames;
+        if (names != null) {
+            String[] values = new String[names.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = URLEncoder.decode(uri.substring(bounds[i * 2], bounds[i * 2 + 1]));
+            }
+            request.setPathParameters(names, values);
+        }
+        return node.handler;
+    }
+
+    // Matches the segment starting at the given position and the rest of the path recursively
+    private static Node match(Node node, String uri, int start, int end, int[] bounds, int parameter) {
+        int segmentEnd = uri.indexOf('/', start);
+        if (segmentEnd < 0 || segmentEnd > end) {
+            segmentEnd = end;
+        }
+        int segmentLength = segmentEnd - start;
+
+        String[] segments = node.segments;
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.length() == segmentLength && uri.regionMatches(start, segment, 0, segmentLength)) {
+                Node result = segmentEnd == end ? node.children[i] : match(node.children[i], uri, segmentEnd + 1, end, bounds, parameter);
+                if (result != null && result.handler != null) {
+                    return result;
+                }
+                break;
+            }
+        }
+
+        if (node.parameter != null && segmentLength > 0) {
+            bounds[parameter * 2] = start;
+            bounds[parameter * 2 + 1] = segmentEnd;
+            Node result = segmentEnd == end ? node.parameter : match(node.parameter, uri, segmentEnd + 1, end, bounds, parameter + 1);
+            if (result != null && result.handler != null) {
+                return result;
+            }
+        }
+
+        return null;
+    }
+
+    private static final class Node {
+        String[] segments = new String[0];
+        Node[] children = new Node[0];
+        Node parameter;
+        RequestHandler handler;
+        String[] parameterNames;
+
+        Node child(String segment) {
+            for (int i = 0; i < segments.length; i++) {
+                if (segments[i].equals(segment)) {
+                    return children[i];
+                }
+            }
+
+            int count = segments.length;
+            segments = Arrays.copyOf(segments, count + 1);
+            children = Arrays.copyOf(children, count + 1);
+            segments[count] = segment;
+            return children[count] = new Node();
+        }
+    }
+}
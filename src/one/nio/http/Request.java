@@ -4,6 +4,8 @@ import one.nio.util.ByteArrayBuilder;
 import one.nio.util.URLEncoder;
 import one.nio.util.Utf8;
 
+import java.util.Arrays;
+
 public final class Request {
     public static final int METHOD_GET     = 1;
     public static final int METHOD_POST    = 2;
@@ -26,16 +28,43 @@ public final class Request {
     private static final byte[] PROTOCOL_HEADER = Utf8.toBytes(" HTTP/1.1\r\n");
     private static final int PROTOCOL_HEADER_LENGTH = 13;
 
+    // Headers looked up on every request get their position recorded when added
+    private static final String[] COMMON_HEADERS = {
+            "Host: ",
+            "Connection: ",
+            "Content-Length: ",
+            "Transfer-Encoding: ",
+            "Expect: "
+    };
+
+    private static final int INITIAL_RAW_SIZE = 512;
+
     private int method;
     private String uri;
     private int headerCount;
     private String[] headers;
+    private byte[] body;
+
+    // Position of the request on its connection, so that pipelined responses go out in order
+    long sequence;
+
+    // Values of {name} segments of the matched path pattern, set by PathRouter
+    private String[] pathParameterNames;
+    private String[] pathParameters;
+
+    // Headers added as bytes are kept undecoded: headers[i] is null and the line is at rawOffsets[i]
+    private byte[] raw;
+    private int rawLength;
+    private int[] rawOffsets;
+    private int[] rawLengths;
+    private int[] commonIndex;
 
     public Request(int method, String uri, int maxHeaderCount) {
         this.method = method;
         this.uri = uri;
         this.headerCount = 0;
         this.headers = new String[maxHeaderCount];
+        this.commonIndex = new int[COMMON_HEADERS.length];
     }
 
     public Request(Request prototype) {
@@ -43,6 +72,17 @@ public final class Request {
         this.uri = prototype.uri;
         this.headerCount = prototype.headerCount;
         this.headers = prototype.headers.clone();
+        this.body = prototype.body;
+        this.sequence = prototype.sequence;
+        this.pathParameterNames = prototype.pathParameterNames;
+        this.pathParameters = prototype.pathParameters;
+        if (prototype.raw != null) {
+            this.raw = prototype.raw.clone();
+            this.rawLength = prototype.rawLength;
+            this.rawOffsets = prototype.rawOffsets.clone();
+            this.rawLengths = prototype.rawLengths.clone();
+        }
+        this.commonIndex = prototype.commonIndex.clone();
     }
 
     public int getMethod() {
@@ -76,33 +116,192 @@ public final class Request {
         return null;
     }
 
-    public String getHeader(String key) {
-        for (int i = 0; i < headerCount; i++) {
-            if (headers[i].startsWith(key)) {
-                return headers[i].substring(key.length());
+    public String getPathParameter(String name) {
+        if (pathParameters != null) {
+            for (int i = 0; i < pathParameters.length; i++) {
+                if (pathParameterNames[i].equals(name)) {
+                    return pathParameters[i];
+                }
             }
         }
         return null;
     }
 
+    void setPathParameters(String[] names, String[] values) {
+        this.pathParameterNames = names;
+        this.pathParameters = values;
+    }
+
+    // Decoded values of the named path or query parameters, looked up in a single pass over the URI.
+    // Unlike getParameter(), names are given without '=' and match whole parameter names only
+    public String[] getParameters(String[] names) {
+        String[] values = new String[names.length];
+        int remaining = names.length;
+
+        if (pathParameters != null) {
+            for (int i = 0; i < names.length; i++) {
+                if ((values[i] = getPathParameter(names[i])) != null) {
+                    remaining--;
+                }
+            }
+        }
+
+        int length = uri.length();
+        for (int start = uri.indexOf('?') + 1; start > 0 && start < length && remaining > 0; ) {
+            int end = uri.indexOf('&', start);
+            if (end < 0) {
+                end = length;
+            }
+            int eq = uri.indexOf('=', start);
+            int nameEnd = eq >= 0 && eq < end ? eq : end;
+
+            for (int i = 0; i < names.length; i++) {
+                if (values[i] == null && names[i].length() == nameEnd - start && uri.startsWith(names[i], start)) {
+                    values[i] = nameEnd < end ? URLEncoder.decode(uri.substring(nameEnd + 1, end)) : "";
+                    remaining--;
+                    break;
+                }
+            }
+            start = end + 1;
+        }
+        return values;
+    }
+
+    public String getHeader(String key) {
+        int i = findHeader(key);
+        if (i < 0) {
+            return null;
+        } else if (headers[i] != null) {
+            return headers[i].substring(key.length());
+        } else {
+            return Utf8.read(raw, rawOffsets[i] + key.length(), rawLengths[i] - key.length());
+        }
+    }
+
+    // Compares the header value without decoding it
+    public boolean headerEqualsIgnoreCase(String key, String value) {
+        int i = findHeader(key);
+        if (i < 0) {
+            return false;
+        } else if (headers[i] != null) {
+            return headers[i].length() - key.length() == value.length() &&
+                    headers[i].regionMatches(true, key.length(), value, 0, value.length());
+        } else if (rawLengths[i] - key.length() != value.length()) {
+            return false;
+        }
+
+        byte[] raw = this.raw;
+        for (int j = 0, offset = rawOffsets[i] + key.length(); j < value.length(); j++) {
+            int c = raw[offset + j];
+            int v = value.charAt(j);
+            if (c != v && ((c | 0x20) != (v | 0x20) || (c | 0x20) < 'a' || (c | 0x20) > 'z')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public void addHeader(String header) {
         if (headerCount < headers.length) {
+            for (int k = 0; k < COMMON_HEADERS.length; k++) {
+                if (commonIndex[k] == 0 && header.startsWith(COMMON_HEADERS[k])) {
+                    commonIndex[k] = headerCount + 1;
+                }
+            }
             headers[headerCount++] = header;
         }
     }
 
+    // Copies the header line without decoding; it is turned into a String only if requested
+    public void addHeader(byte[] buffer, int offset, int length) {
+        if (headerCount >= headers.length) {
+            return;
+        }
+
+        if (raw == null) {
+            raw = new byte[Math.max(INITIAL_RAW_SIZE, length)];
+            rawOffsets = new int[headers.length];
+            rawLengths = new int[headers.length];
+        } else if (rawLength + length > raw.length) {
+            raw = Arrays.copyOf(raw, Math.max(raw.length * 2, rawLength + length));
+        }
+        System.arraycopy(buffer, offset, raw, rawLength, length);
+
+        for (int k = 0; k < COMMON_HEADERS.length; k++) {
+            if (commonIndex[k] == 0 && rawStartsWith(rawLength, length, COMMON_HEADERS[k])) {
+                commonIndex[k] = headerCount + 1;
+            }
+        }
+
+        rawOffsets[headerCount] = rawLength;
+        rawLengths[headerCount] = length;
+        headerCount++;
+        rawLength += length;
+    }
+
+    private int findHeader(String key) {
+        int hashCode = key.hashCode();
+        for (int k = 0; k < COMMON_HEADERS.length; k++) {
+            if (hashCode == COMMON_HEADERS[k].hashCode() && key.equals(COMMON_HEADERS[k])) {
+                return commonIndex[k] - 1;
+            }
+        }
+
+        for (int i = 0; i < headerCount; i++) {
+            if (headers[i] != null ? headers[i].startsWith(key) : rawStartsWith(rawOffsets[i], rawLengths[i], key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean rawStartsWith(int offset, int length, String prefix) {
+        int prefixLength = prefix.length();
+        if (length < prefixLength) {
+            return false;
+        }
+        byte[] raw = this.raw;
+        for (int i = 0; i < prefixLength; i++) {
+            if (raw[offset + i] != (byte) prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    // The caller is responsible for the matching Content-Length header
+    public void setBody(byte[] body) {
+        this.body = body;
+    }
+
     public byte[] toBytes() {
         int estimatedSize = VERBS[method].length + Utf8.length(uri) + PROTOCOL_HEADER_LENGTH + headerCount * 2;
+        if (body != null) {
+            estimatedSize += body.length;
+        }
         for (int i = 0; i < headerCount; i++) {
-            estimatedSize += headers[i].length();
+            estimatedSize += headers[i] != null ? headers[i].length() : rawLengths[i];
         }
 
         ByteArrayBuilder builder = new ByteArrayBuilder(estimatedSize);
         builder.append(VERBS[method]).append(uri).append(PROTOCOL_HEADER);
         for (int i = 0; i < headerCount; i++) {
-            builder.append(headers[i]).append('\r').append('\n');
+            if (headers[i] != null) {
+                builder.append(headers[i]);
+            } else {
+                builder.append(raw, rawOffsets[i], rawLengths[i]);
+            }
+            builder.append('\r').append('\n');
+        }
+        builder.append('\r').append('\n');
+        if (body != null) {
+            builder.append(body);
         }
-        return builder.append('\r').append('\n').trim();
+        return builder.trim();
     }
 
     @Override
@@ -0,0 +1,71 @@
+package one.nio.http.gen;
+
+// Conversions of request parameters called by generated request handlers.
+// IllegalArgumentException makes the handler answer with 400 Bad Request
+public final class ParamParser {
+
+    public static int toInt(String value, String name) {
+        try {
+            return Integer.parseInt(required(value, name));
+        } catch (NumberFormatException e) {
+            throw invalid(name);
+        }
+    }
+
+    public static long toLong(String value, String name) {
+        try {
+            return Long.parseLong(required(value, name));
+        } catch (NumberFormatException e) {
+            throw invalid(name);
+        }
+    }
+
+    public static double toDouble(String value, String name) {
+        try {
+            return Double.parseDouble(required(value, name));
+        } catch (NumberFormatException e) {
+            throw invalid(name);
+        }
+    }
+
+    public static boolean toBoolean(String value, String name) {
+        return toBooleanValue(required(value, name), name);
+    }
+
+    public static Integer toInteger(String value, String name) {
+        return value == null ? null : toInt(value, name);
+    }
+
+    public static Long toLongObject(String value, String name) {
+        return value == null ? null : toLong(value, name);
+    }
+
+    public static Double toDoubleObject(String value, String name) {
+        return value == null ? null : toDouble(value, name);
+    }
+
+    public static Boolean toBooleanObject(String value, String name) {
+        return value == null ? null : toBooleanValue(value, name);
+    }
+
+    // A parameter without a value, like ?verbose, is true
+    private static boolean toBooleanValue(String value, String name) {
+        if (value.isEmpty() || value.equals("true") || value.equals("1")) {
+            return true;
+        } else if (value.equals("false") || value.equals("0")) {
+            return false;
+        }
+        throw invalid(name);
+    }
+
+    private static String required(String value, String name) {
+        if (value == null) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    private static IllegalArgumentException invalid(String name) {
+        return new IllegalArgumentException("Invalid parameter: " + name);
+    }
+}
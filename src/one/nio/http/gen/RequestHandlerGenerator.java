@@ -2,23 +2,41 @@ package one.nio.http.gen;
 
 import one.nio.gen.BytecodeGenerator;
 import one.nio.http.HttpSession;
+import one.nio.http.Param;
 import one.nio.http.Request;
 import one.nio.http.RequestHandler;
 import one.nio.http.Response;
 
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Type;
 
+import java.lang.annotation.Annotation;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
 
 public class RequestHandlerGenerator extends BytecodeGenerator {
+    private static final HashMap<Class, String> CONVERTERS = new HashMap<Class, String>();
+
+    static {
+        CONVERTERS.put(int.class, "toInt");
+        CONVERTERS.put(long.class, "toLong");
+        CONVERTERS.put(double.class, "toDouble");
+        CONVERTERS.put(boolean.class, "toBoolean");
+        CONVERTERS.put(Integer.class, "toInteger");
+        CONVERTERS.put(Long.class, "toLongObject");
+        CONVERTERS.put(Double.class, "toDoubleObject");
+        CONVERTERS.put(Boolean.class, "toBooleanObject");
+    }
+
     private int count;
 
     public RequestHandler generateFor(Method m, Object router) {
-        checkMethod(m);
+        String[] paramNames = checkMethod(m);
 
         String className = "RequestHandler" + (count++) + "_" + m.getName();
         Class[] params = m.getParameterTypes();
@@ -45,10 +63,19 @@ public class RequestHandlerGenerator extends BytecodeGenerator {
         mv.visitMaxs(0, 0);
         mv.visitEnd();
 
+        if (paramNames.length > 0) {
+            emitParamNames(cv, className, paramNames);
+        }
+
         // public final void handleRequest(Request request, HttpSession session) throws IOException;
         mv = cv.visitMethod(ACC_PUBLIC | ACC_FINAL, "handleRequest", "(Lone/nio/http/Request;Lone/nio/http/HttpSession;)V", null, null);
         mv.visitCode();
 
+        int[] locals = new int[params.length];
+        if (paramNames.length > 0) {
+            emitBindParams(mv, className, params, paramNames, locals);
+        }
+
         if (m.getReturnType() == Response.class) {
             mv.visitVarInsn(ALOAD, 2);
             mv.visitVarInsn(ALOAD, 1);
@@ -56,11 +83,14 @@ public class RequestHandlerGenerator extends BytecodeGenerator {
 
         mv.visitVarInsn(ALOAD, 0);
         mv.visitFieldInsn(GETFIELD, className, "router", routerType);
-        if (params.length >= 1) {
-            mv.visitVarInsn(ALOAD, 1);
-        }
-        if (params.length >= 2) {
-            mv.visitVarInsn(ALOAD, 2);
+        for (int i = 0; i < params.length; i++) {
+            if (params[i] == Request.class) {
+                mv.visitVarInsn(ALOAD, 1);
+            } else if (params[i] == HttpSession.class) {
+                mv.visitVarInsn(ALOAD, 2);
+            } else {
+                mv.visitVarInsn(Type.getType(params[i]).getOpcode(ILOAD), locals[i]);
+            }
         }
         emitInvoke(mv, m);
 
@@ -76,9 +106,91 @@ public class RequestHandlerGenerator extends BytecodeGenerator {
         return instantiate(cv.toByteArray(), m, router);
     }
 
-    private void checkMethod(Method m) {
+    // private static final String[] PARAMS = { names of @Param arguments };
+    private void emitParamNames(ClassWriter cv, String className, String[] paramNames) {
+        cv.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, "PARAMS", "[Ljava/lang/String;", null, null).visitEnd();
+
+        MethodVisitor mv = cv.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+        mv.visitCode();
+
+        emitInt(mv, paramNames.length);
+        mv.visitTypeInsn(ANEWARRAY, "java/lang/String");
+        for (int i = 0; i < paramNames.length; i++) {
+            mv.visitInsn(DUP);
+            emitInt(mv, i);
+            mv.visitLdcInsn(paramNames[i]);
+            mv.visitInsn(AASTORE);
+        }
+        mv.visitFieldInsn(PUTSTATIC, className, "PARAMS", "[Ljava/lang/String;");
+
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    // Looks up all parameters in one pass and converts them into locals starting at #4;
+    // a conversion failure is answered with 400 Bad Request without calling the handler
+    private void emitBindParams(MethodVisitor mv, String className, Class[] params, String[] paramNames, int[] locals) {
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitFieldInsn(GETSTATIC, className, "PARAMS", "[Ljava/lang/String;");
+        mv.visitMethodInsn(INVOKEVIRTUAL, "one/nio/http/Request", "getParameters", "([Ljava/lang/String;)[Ljava/lang/String;");
+        mv.visitVarInsn(ASTORE, 3);
+
+        Label start = new Label();
+        Label end = new Label();
+        Label handler = new Label();
+        Label bound = new Label();
+        mv.visitTryCatchBlock(start, end, handler, "java/lang/IllegalArgumentException");
+        mv.visitLabel(start);
+
+        int local = 4;
+        for (int i = 0, param = 0; i < params.length; i++) {
+            if (params[i] == Request.class || params[i] == HttpSession.class) {
+                continue;
+            }
+
+            mv.visitVarInsn(ALOAD, 3);
+            emitInt(mv, param);
+            mv.visitInsn(AALOAD);
+            if (params[i] != String.class) {
+                mv.visitLdcInsn(paramNames[param]);
+                mv.visitMethodInsn(INVOKESTATIC, "one/nio/http/gen/ParamParser", CONVERTERS.get(params[i]),
+                        "(Ljava/lang/String;Ljava/lang/String;)" + Type.getDescriptor(params[i]));
+            }
+
+            Type type = Type.getType(params[i]);
+            mv.visitVarInsn(type.getOpcode(ISTORE), local);
+            locals[i] = local;
+            local += type.getSize();
+            param++;
+        }
+
+        mv.visitLabel(end);
+        mv.visitJumpInsn(GOTO, bound);
+
+        // session.writeResponse(request, new Response(Response.BAD_REQUEST, Utf8.toBytes(e.getMessage())));
+        mv.visitLabel(handler);
+        mv.visitVarInsn(ASTORE, 3);
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitTypeInsn(NEW, "one/nio/http/Response");
+        mv.visitInsn(DUP);
+        mv.visitLdcInsn(Response.BAD_REQUEST);
+        mv.visitVarInsn(ALOAD, 3);
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Throwable", "getMessage", "()Ljava/lang/String;");
+        mv.visitMethodInsn(INVOKESTATIC, "one/nio/util/Utf8", "toBytes", "(Ljava/lang/String;)[B");
+        mv.visitMethodInsn(INVOKESPECIAL, "one/nio/http/Response", "<init>", "(Ljava/lang/String;[B)V");
+        mv.visitMethodInsn(INVOKEVIRTUAL, "one/nio/http/HttpSession", "writeResponse", "(Lone/nio/http/Request;Lone/nio/http/Response;)V");
+        mv.visitInsn(RETURN);
+
+        mv.visitLabel(bound);
+    }
+
+    // Returns the names of @Param arguments in order
+    private String[] checkMethod(Method m) {
         Class returnType = m.getReturnType();
         Class[] params = m.getParameterTypes();
+        Annotation[][] annotations = m.getParameterAnnotations();
 
         if (Modifier.isStatic(m.getModifiers())) {
             throw new IllegalArgumentException("Method should not be static: " + m);
@@ -88,11 +200,25 @@ public class RequestHandlerGenerator extends BytecodeGenerator {
             throw new IllegalArgumentException("Invalid return type of " + m);
         }
 
-        if (params.length > 2 ||
-                params.length > 1 && params[1] != HttpSession.class ||
-                params.length > 0 && params[0] != Request.class) {
-            throw new IllegalArgumentException("Invalid parameter types of " + m);
+        ArrayList<String> paramNames = new ArrayList<String>(params.length);
+        for (int i = 0; i < params.length; i++) {
+            Param param = findParam(annotations[i]);
+            if (param != null && (params[i] == String.class || CONVERTERS.containsKey(params[i]))) {
+                paramNames.add(param.value());
+            } else if (param != null || params[i] != Request.class && params[i] != HttpSession.class) {
+                throw new IllegalArgumentException("Invalid parameter types of " + m);
+            }
+        }
+        return paramNames.toArray(new String[paramNames.size()]);
+    }
+
+    private static Param findParam(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof Param) {
+                return (Param) annotation;
+            }
         }
+        return null;
     }
 
     private RequestHandler instantiate(byte[] classData, Method m, Object router) {
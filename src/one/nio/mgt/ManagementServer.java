@@ -46,7 +46,7 @@ public class ManagementServer extends HttpServer {
 
     @HttpHandler("/monitor/server")
     public Response getMonitorServerResponse(Request request) {
-        return getJmxResponse(request, "one.nio.server:type=Server,*", "AcceptedSessions,Connections,RequestsProcessed,RequestsRejected,Workers,WorkersActive,SelectorMaxReady", true);
+        return getJmxResponse(request, "one.nio.server:type=Server,*", "AcceptedSessions,Connections,RequestsProcessed,RequestsRejected,Workers,WorkersActive,SelectorMaxReady,SelectorLoopTime,WorkerQueueTime,HandlerTime,ResponseBytes", true);
     }
 
     @HttpHandler("/jmx")
@@ -75,7 +75,8 @@ public class ManagementServer extends HttpServer {
                 result.append(objName.toString());
                 Object[] values = Management.getAttributes(objName, attributes);
                 for (int i = 0; i < values.length; i++) {
-                    result.append(i == 0 ? '\t' : ' ').append(values[i]);
+                    result.append(i == 0 ? '\t' : ' ');
+                    appendValue(result, values[i]);
                 }
                 result.append("\r\n");
             }
@@ -86,4 +87,17 @@ public class ManagementServer extends HttpServer {
             return new Response(Response.INTERNAL_ERROR, Utf8.toBytes(errorMessage));
         }
     }
+
+    // Array elements are separated by commas to keep one token per attribute
+    private static void appendValue(StringBuilder result, Object value) {
+        if (value instanceof long[]) {
+            long[] array = (long[]) value;
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) result.append(',');
+                result.append(array[i]);
+            }
+        } else {
+            result.append(value);
+        }
+    }
 }
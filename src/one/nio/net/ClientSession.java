@@ -0,0 +1,105 @@
+package one.nio.net;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+// Outbound connection driven by an EventLoop. The connection is established without blocking;
+// output written in the meantime is queued and sent once it completes
+public class ClientSession extends Session {
+    private volatile boolean connecting;
+
+    // Timeouts to restore after the connect timeout has been served
+    private int connectedReadTimeout;
+    private int connectedWriteTimeout;
+
+    public ClientSession(Socket socket) {
+        super(socket);
+    }
+
+    public final boolean isConnecting() {
+        return connecting;
+    }
+
+    // Called by EventLoop after the connect has been started on a non-blocking socket
+    synchronized void startConnect(Selector selector, int timeout) {
+        connecting = true;
+        connectedReadTimeout = getReadTimeout();
+        connectedWriteTimeout = getWriteTimeout();
+        setTimeouts(timeout, timeout);
+        lastAccessTime = System.currentTimeMillis();
+        selector.register(this);
+        selector.listen(this, WRITEABLE);
+    }
+
+    // Called by the selecting thread once the connection is established
+    protected void onConnected() throws Exception {
+        // Override to start the conversation
+    }
+
+    // Called by the selecting thread after the session has been closed
+    protected void onConnectFailed(IOException e) {
+        // Override to report the failure
+    }
+
+    @Override
+    public synchronized void write(byte[] data, int offset, int count) throws IOException {
+        if (connecting) {
+            if (writeQueue == null) {
+                writeQueue = new WriteQueue();
+            }
+            writeQueue.add(data, offset, count);
+        } else {
+            super.write(data, offset, count);
+        }
+    }
+
+    @Override
+    public void process(byte[] buffer) throws Exception {
+        if (connecting) {
+            if ((events & (WRITEABLE | CLOSING)) != 0) {
+                finishConnect();
+            }
+        } else {
+            super.process(buffer);
+        }
+    }
+
+    @Override
+    protected void onTimeout() {
+        if (connecting) {
+            connectFailed(new SocketTimeoutException("Connect timed out"));
+        } else {
+            super.onTimeout();
+        }
+    }
+
+    private void finishConnect() throws Exception {
+        try {
+            socket.finishConnect();
+        } catch (IOException e) {
+            connectFailed(e);
+            return;
+        }
+
+        synchronized (this) {
+            connecting = false;
+            lastAccessTime = selector.selectTime;
+            selector.timers.remove(this);
+            setTimeouts(connectedReadTimeout, connectedWriteTimeout);
+            if (writePending()) {
+                waitWriteable();
+            } else {
+                selector.listen(this, READABLE);
+            }
+        }
+        onConnected();
+    }
+
+    private void connectFailed(IOException e) {
+        synchronized (this) {
+            connecting = false;
+            close();
+        }
+        onConnectFailed(e);
+    }
+}
@@ -36,6 +36,13 @@ public class ConnectionString {
             this.params = Collections.emptyMap();
         }
 
+        if (connectionString.startsWith(Socket.UNIX_PREFIX, addrStart)) {
+            // unix:/path/to/socket has no port
+            this.host = connectionString.substring(addrStart, queryString);
+            this.port = 0;
+            return;
+        }
+
         p = connectionString.indexOf('/', addrStart);
         int addrEnd = p >= 0 && p < queryString ? p : queryString;
 
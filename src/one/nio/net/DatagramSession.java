@@ -0,0 +1,87 @@
+package one.nio.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+// Handles a bound datagram socket registered with a selector.
+// Received datagrams are passed to processDatagram() one batch at a time; replies and other datagrams
+// sent from the selecting thread are collected and flushed with one system call after every batch.
+// Datagrams the socket buffer cannot take are dropped.
+public class DatagramSession extends Session {
+    public static final int DEFAULT_BATCH_SIZE = 64;
+    public static final int DEFAULT_MAX_SIZE = 2048;
+
+    protected final Datagrams received;
+    protected final Datagrams outgoing;
+    private long receivedCount;
+    private long droppedCount;
+
+    public DatagramSession(Socket socket) {
+        this(socket, DEFAULT_BATCH_SIZE, DEFAULT_MAX_SIZE);
+    }
+
+    public DatagramSession(Socket socket, int batchSize, int maxSize) {
+        super(socket);
+        this.received = new Datagrams(batchSize, maxSize);
+        this.outgoing = new Datagrams(batchSize, maxSize);
+    }
+
+    public final long getReceivedCount() {
+        return receivedCount;
+    }
+
+    public final long getDroppedCount() {
+        return droppedCount;
+    }
+
+    @Override
+    protected void processRead(byte[] buffer) throws Exception {
+        int count = socket.receive(received);
+        readAgain = count == received.capacity;
+        receivedCount += count;
+
+        for (int i = 0; i < count; i++) {
+            processDatagram(received, i);
+        }
+        flushDatagrams();
+    }
+
+    // Called by the selecting thread; the contents are valid until the method returns
+    protected void processDatagram(Datagrams datagrams, int index) throws Exception {
+        // Discard
+    }
+
+    public final void send(byte[] data, int offset, int length, InetSocketAddress target) throws IOException {
+        while (!outgoing.add(data, offset, length, target)) {
+            flushDatagrams();
+        }
+    }
+
+    public final void reply(byte[] data, int offset, int length, Datagrams source, int index) throws IOException {
+        while (!outgoing.add(data, offset, length, source, index)) {
+            flushDatagrams();
+        }
+    }
+
+    protected void flushDatagrams() throws IOException {
+        int count = outgoing.count;
+        for (int sent = 0; sent < count; ) {
+            try {
+                int result = socket.send(outgoing, sent);
+                if (result == 0) {
+                    droppedCount += count - sent;
+                    break;
+                }
+                sent += result;
+            } catch (IOException e) {
+                if (!socket.isOpen()) {
+                    throw e;
+                }
+                // The first datagram of the rest was rejected, e.g. unreachable or too long
+                droppedCount++;
+                sent++;
+            }
+        }
+        outgoing.clear();
+    }
+}
@@ -0,0 +1,128 @@
+package one.nio.net;
+
+import one.nio.mem.DirectMemory;
+import one.nio.util.JavaInternals;
+
+import sun.misc.Unsafe;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+
+// A batch of datagrams in off-heap slots of maxSize bytes each,
+// filled by Socket.receive() or sent by Socket.send() with a single system call
+public final class Datagrams {
+    private static final Unsafe unsafe = JavaInternals.getUnsafe();
+    private static final long byteArrayOffset = unsafe.arrayBaseOffset(byte[].class);
+
+    // Port, address length, padding and up to 16 bytes of address; the layout is shared with socket.c
+    static final int ADDRESS_SIZE = 20;
+
+    final int capacity;
+    final int maxSize;
+    final long buffer;
+    final int[] lengths;
+    final byte[] addresses;
+    int count;
+
+    public Datagrams(int capacity, int maxSize) {
+        this.capacity = capacity;
+        this.maxSize = maxSize;
+        this.buffer = DirectMemory.allocate((long) capacity * maxSize, this);
+        this.lengths = new int[capacity];
+        this.addresses = new byte[capacity * ADDRESS_SIZE];
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    // Off-heap address of the datagram contents
+    public long address(int index) {
+        return buffer + (long) index * maxSize;
+    }
+
+    // Datagrams longer than maxSize are received truncated
+    public int length(int index) {
+        return lengths[index];
+    }
+
+    public int get(int index, byte[] data, int offset) {
+        int length = Math.min(lengths[index], data.length - offset);
+        unsafe.copyMemory(null, address(index), data, byteArrayOffset + offset, length);
+        return length;
+    }
+
+    public InetSocketAddress sender(int index) {
+        int slot = index * ADDRESS_SIZE;
+        int length = addresses[slot + 2];
+        if (length == 0) {
+            return null;
+        }
+
+        byte[] address = new byte[length];
+        System.arraycopy(addresses, slot + 4, address, 0, length);
+        int port = (addresses[slot] & 0xff) << 8 | (addresses[slot + 1] & 0xff);
+
+        try {
+            return new InetSocketAddress(InetAddress.getByAddress(address), port);
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    // Appends a datagram for sending; the target is null for connected sockets.
+    // Returns false if the batch is full
+    public boolean add(byte[] data, int offset, int length, InetSocketAddress target) {
+        if (!add(data, offset, length)) {
+            return false;
+        }
+
+        int slot = (count - 1) * ADDRESS_SIZE;
+        if (target == null) {
+            addresses[slot + 2] = 0;
+        } else {
+            byte[] address = target.getAddress().getAddress();
+            addresses[slot] = (byte) (target.getPort() >>> 8);
+            addresses[slot + 1] = (byte) target.getPort();
+            addresses[slot + 2] = (byte) address.length;
+            System.arraycopy(address, 0, addresses, slot + 4, address.length);
+        }
+        return true;
+    }
+
+    // Appends a reply to the sender of the given datagram
+    public boolean add(byte[] data, int offset, int length, Datagrams source, int index) {
+        if (!add(data, offset, length)) {
+            return false;
+        }
+
+        System.arraycopy(source.addresses, index * ADDRESS_SIZE, addresses, (count - 1) * ADDRESS_SIZE, ADDRESS_SIZE);
+        return true;
+    }
+
+    private boolean add(byte[] data, int offset, int length) {
+        if (length > maxSize) {
+            throw new IllegalArgumentException("Datagram too long: " + length);
+        }
+        if (count == capacity) {
+            return false;
+        }
+
+        unsafe.copyMemory(data, byteArrayOffset + offset, null, address(count), length);
+        lengths[count++] = length;
+        return true;
+    }
+}
@@ -0,0 +1,159 @@
+package one.nio.net;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+// A few selector threads driving many outbound sessions, so that a connection
+// waiting for a slow backend does not hold a thread of its own
+public class EventLoop implements Closeable {
+    private static final Log log = LogFactory.getLog(EventLoop.class);
+    private static final int BUFFER_SIZE = 64000;
+
+    private final LoopThread[] threads;
+    private volatile boolean running;
+
+    public EventLoop(String name, int threadCount) throws IOException {
+        this.threads = new LoopThread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new LoopThread(name + " #" + i);
+        }
+
+        this.running = true;
+        for (LoopThread thread : threads) {
+            thread.start();
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getSessions() {
+        int sessions = 0;
+        for (LoopThread thread : threads) {
+            sessions += thread.selector.size();
+        }
+        return sessions;
+    }
+
+    // Starts connecting without blocking the caller. The outcome is reported to the session
+    // by the selecting thread; errors detected right away are thrown after closing the socket
+    public void connect(ClientSession session, InetAddress address, int port, int timeout) throws IOException {
+        Socket socket = session.socket;
+        try {
+            socket.setBlocking(false);
+            socket.beginConnect(address, port);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        session.startConnect(leastLoaded(), timeout);
+    }
+
+    public void connect(ClientSession session, String host, int port, int timeout) throws IOException {
+        connect(session, InetAddress.getByName(host), port, timeout);
+    }
+
+    // Adds a session over an already connected socket
+    public void register(Session session) {
+        session.socket.setBlocking(false);
+        leastLoaded().register(session);
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        for (LoopThread thread : threads) {
+            thread.shutdown();
+        }
+        for (LoopThread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    private Selector leastLoaded() {
+        Selector result = threads[0].selector;
+        for (int i = 1; i < threads.length; i++) {
+            if (threads[i].selector.size() < result.size()) {
+                result = threads[i].selector;
+            }
+        }
+        return result;
+    }
+
+    private final class LoopThread extends Thread {
+        final Selector selector;
+
+        LoopThread(String name) throws IOException {
+            super(name);
+            setDaemon(true);
+            this.selector = Selector.create();
+        }
+
+        @Override
+        public void run() {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+
+            while (running) {
+                for (Iterator<Session> selectedSessions = selector.select(); selectedSessions.hasNext(); ) {
+                    Session session = selectedSessions.next();
+                    try {
+                        session.process(buffer);
+                    } catch (Throwable e) {
+                        handleError(session, e);
+                    }
+                }
+
+                for (Runnable task; (task = selector.nextTask()) != null; ) {
+                    try {
+                        task.run();
+                    } catch (Throwable e) {
+                        log.error("Cannot run selector task", e);
+                    }
+                }
+
+                selector.expireSessions();
+            }
+            selector.close();
+        }
+
+        // A task rather than a wakeup, since select() returns only for events or tasks
+        void shutdown() {
+            selector.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ArrayList<Session> sessions = new ArrayList<Session>(selector.size());
+                    for (Session session : selector) {
+                        sessions.add(session);
+                    }
+                    for (Session session : sessions) {
+                        session.close();
+                    }
+                }
+            });
+        }
+
+        private void handleError(Session session, Throwable e) {
+            if (e instanceof SocketException) {
+                if (running && log.isDebugEnabled()) {
+                    log.debug("Connection closed: " + session.clientIp());
+                }
+            } else if (running) {
+                log.error("Cannot process session with " + session.clientIp(), e);
+            }
+            session.close();
+        }
+    }
+}
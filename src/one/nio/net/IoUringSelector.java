@@ -0,0 +1,393 @@
+package one.nio.net;
+
+import one.nio.mem.DirectMemory;
+import one.nio.os.NativeLibrary;
+import one.nio.util.JavaInternals;
+
+import sun.misc.Unsafe;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+// Level-triggered readiness on top of one-shot io_uring polls.
+// Polls of processed sessions are re-armed in a batch and submitted together with the next wait.
+// Only the selecting thread touches the submission queue. Other threads append requests to a pending list
+// and wake it through an eventfd: a poll completes as task work of the thread that submitted it,
+// which would interrupt that thread's blocking calls.
+final class IoUringSelector extends Selector {
+    static final Unsafe unsafe = JavaInternals.getUnsafe();
+    static final boolean IS_SUPPORTED = NativeLibrary.IS_SUPPORTED &&
+            !"false".equals(System.getProperty("one.nio.net.iouring")) && isSupported0();
+
+    private static final int RING_ENTRIES = 4096;
+    private static final int MAX_COMPLETIONS = 1024;
+    private static final int CQE_SIZE = 16;
+    private static final long WAKEUP_USER_DATA = -2;
+
+    private static final int OP_ADD    = 0;
+    private static final int OP_UPDATE = 1;
+    private static final int OP_REMOVE = 2;
+
+    private static native boolean isSupported0();
+    private static native long ringCreate(int entries) throws IOException;
+    private static native void ringClose(long ring);
+    private static native boolean pollAdd(long ring, int fd, long userData, int events);
+    private static native boolean pollUpdate(long ring, long userData, int events);
+    private static native boolean pollRemove(long ring, long userData);
+    private static native boolean armWakeup(long ring);
+    private static native void submit(long ring);
+    private static native void drainWakeup(long ring);
+    private static native void wakeup(long ring);
+    private static native int ringWait(long ring, long buf, int max, int timeout);
+
+    private final long cqeBuffer;
+    private long ring;
+    private Session[] sessions;
+    private int[] tickets;
+    private int nextTicket;
+    private int size;
+    private volatile int closeFlag;
+
+    private volatile Thread owner;
+    private boolean wakeupArmed;
+    private final Session[] ready;
+    private int readyCount;
+    private final ReadySessions readySessions = new ReadySessions();
+
+    // Requests not yet in the submission queue, three longs each: operation, user data, fd and events
+    private long[] pending = new long[48];
+    private int pendingCount;
+
+    IoUringSelector() throws IOException {
+        this.ring = ringCreate(RING_ENTRIES);
+        this.cqeBuffer = DirectMemory.allocate(MAX_COMPLETIONS * CQE_SIZE, this);
+        this.sessions = new Session[MAX_COMPLETIONS];
+        this.tickets = new int[MAX_COMPLETIONS];
+        this.ready = new Session[MAX_COMPLETIONS];
+    }
+
+    @Override
+    public final int size() {
+        return size;
+    }
+
+    @Override
+    public final synchronized void close() {
+        if (closeFlag == 0) {
+            closeFlag = -1;
+            size = 0;
+        }
+
+        Thread owner = this.owner;
+        if (owner == null || owner == Thread.currentThread() || !owner.isAlive()) {
+            release();
+        } else if (ring != 0) {
+            // The ring is released by the selecting thread
+            wakeup(ring);
+        }
+    }
+
+    @Override
+    public final synchronized void wakeup() {
+        if (ring != 0 && closeFlag == 0) {
+            wakeup(ring);
+        }
+    }
+
+    @Override
+    public final boolean isEdgeTriggered() {
+        return false;
+    }
+
+    @Override
+    final synchronized void registerSession(Session session) {
+        if (ring == 0) {
+            return;
+        }
+
+        if (++size > sessions.length) {
+            sessions = Arrays.copyOf(sessions, sessions.length * 2);
+            tickets = Arrays.copyOf(tickets, tickets.length * 2);
+        }
+
+        final int mask = sessions.length - 1;
+        for (int slot = session.hashCode() & mask; ; slot = (slot + 1) & mask) {
+            if (sessions[slot] == null) {
+                session.selector = this;
+                session.slot = slot;
+                session.interestPending = false;
+                sessions[slot] = session;
+                break;
+            }
+        }
+
+        session.interestEvents = Session.READABLE;
+        arm(session);
+        session.scheduleTimeout();
+    }
+
+    @Override
+    public final synchronized void unregister(Session session) {
+        timers.remove(session);
+        if (sessions[session.slot] == session) {
+            sessions[session.slot] = null;
+            size--;
+            if (ring != 0 && session.registeredEvents != 0) {
+                request(OP_REMOVE, userData(session.slot), 0);
+                session.registeredEvents = 0;
+            }
+        }
+    }
+
+    // Called under the session lock
+    @Override
+    public final synchronized void listen(Session session, int events) {
+        session.interestEvents = events;
+        if (ring == 0 || sessions[session.slot] != session) {
+            return;
+        }
+
+        if (session.registeredEvents != 0) {
+            if (session.registeredEvents != events) {
+                request(events != 0 ? OP_UPDATE : OP_REMOVE, userData(session.slot), events);
+                session.registeredEvents = events;
+            }
+        } else if (!session.interestPending && events != 0) {
+            // Neither armed nor waiting to be re-armed after processing
+            arm(session);
+        }
+    }
+
+    @Override
+    public final Iterator<Session> iterator() {
+        return new Iterator<Session>() {
+            private Session next = findNext(0);
+
+            private Session findNext(int slot) {
+                for (Session[] sessions = IoUringSelector.this.sessions; slot < sessions.length; slot++) {
+                    Session session = sessions[slot];
+                    if (session != null) {
+                        return session;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public final boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public final Session next() {
+                Session session = next;
+                next = findNext(session.slot + 1);
+                return session;
+            }
+
+            @Override
+            public final void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public final Iterator<Session> select() {
+        owner = Thread.currentThread();
+
+        long ring;
+        int timeout = selectTimeout();
+        synchronized (this) {
+            rearmReadySessions();
+            if (closeFlag != 0) {
+                release();
+                return readySessions.reset(0);
+            }
+            if (!wakeupArmed && !(wakeupArmed = armWakeup(this.ring))) {
+                submit(this.ring);
+                wakeupArmed = armWakeup(this.ring);
+            }
+            if (!pushPending() || !wakeupArmed) {
+                // The kernel does not take more requests now: reap completions without blocking and retry
+                timeout = 0;
+            }
+            ring = this.ring;
+        }
+
+        int count = spinTime > 0 && timeout != 0 ? spin(ring) : 0;
+        if (count == 0) {
+            parks++;
+            count = ringWait(ring, cqeBuffer, MAX_COMPLETIONS, timeout);
+        }
+        selectTime = System.currentTimeMillis();
+
+        synchronized (this) {
+            if (closeFlag != 0) {
+                release();
+                return readySessions.reset(0);
+            }
+
+            int readyCount = 0;
+            for (long cqe = cqeBuffer, lastCqe = cqe + count * CQE_SIZE; cqe < lastCqe; cqe += CQE_SIZE) {
+                long userData = unsafe.getLong(cqe);
+                int slot = (int) userData;
+                if (slot < 0) {
+                    if (userData == WAKEUP_USER_DATA) {
+                        drainWakeup(ring);
+                        wakeupArmed = false;
+                    }
+                    continue;
+                }
+
+                // Completions of removed or re-armed polls carry an outdated ticket
+                Session session = sessions[slot];
+                if (session == null || tickets[slot] != (int) (userData >>> 32)) {
+                    continue;
+                }
+
+                int result = unsafe.getInt(cqe + 8);
+                session.registeredEvents = 0;
+                session.interestPending = true;
+                session.events = result < 0 ? Session.CLOSING : result;
+                ready[readyCount++] = session;
+            }
+            this.readyCount = readyCount;
+            return readySessions.reset(readyCount);
+        }
+    }
+
+    private int spin(long ring) {
+        long deadline = System.nanoTime() + spinTime;
+        do {
+            int count = ringWait(ring, cqeBuffer, MAX_COMPLETIONS, 0);
+            if (count != 0 || closeFlag != 0) {
+                if (count > 0) {
+                    spinWakeups++;
+                }
+                return count;
+            }
+        } while (System.nanoTime() < deadline);
+        return 0;
+    }
+
+    private void rearmReadySessions() {
+        Session[] ready = this.ready;
+        for (int i = 0; i < readyCount; i++) {
+            Session session = ready[i];
+            ready[i] = null;
+            if (session.selector != this) {
+                // Moved to another selector after processing
+                continue;
+            }
+            session.interestPending = false;
+            if (ring != 0 && sessions[session.slot] == session && session.registeredEvents == 0 && session.interestEvents != 0) {
+                arm(session);
+            }
+        }
+        readyCount = 0;
+    }
+
+    private void arm(Session session) {
+        int slot = session.slot;
+        tickets[slot] = ++nextTicket & 0x7fffffff;
+        session.registeredEvents = session.interestEvents;
+        request(OP_ADD, userData(slot), (long) ((NativeSocket) session.socket).fd << 32 | session.interestEvents);
+    }
+
+    // Called under the selector lock. The selecting thread writes straight into the submission queue
+    // unless earlier requests are still pending; everything else is kept for it in order
+    private void request(int op, long userData, long arg) {
+        if (pendingCount == 0 && Thread.currentThread() == owner && push(op, userData, arg)) {
+            return;
+        }
+
+        if (pendingCount * 3 == pending.length) {
+            pending = Arrays.copyOf(pending, pending.length * 2);
+        }
+        int i = pendingCount++ * 3;
+        pending[i] = op;
+        pending[i + 1] = userData;
+        pending[i + 2] = arg;
+        wakeupIfForeign();
+    }
+
+    private boolean push(int op, long userData, long arg) {
+        switch (op) {
+            case OP_ADD:
+                return pollAdd(ring, (int) (arg >>> 32), userData, (int) arg);
+            case OP_UPDATE:
+                return pollUpdate(ring, userData, (int) arg);
+            default:
+                return pollRemove(ring, userData);
+        }
+    }
+
+    // Moves pending requests into the submission queue, submitting it when full.
+    // Whatever does not fit stays pending for the next select(); returns whether all went in
+    private boolean pushPending() {
+        long[] pending = this.pending;
+        int pushed = 0;
+        for (int i = 0; pushed < pendingCount; pushed++, i += 3) {
+            if (!push((int) pending[i], pending[i + 1], pending[i + 2])) {
+                submit(ring);
+                if (!push((int) pending[i], pending[i + 1], pending[i + 2])) {
+                    break;
+                }
+            }
+        }
+
+        if (pushed > 0) {
+            System.arraycopy(pending, pushed * 3, pending, 0, (pendingCount - pushed) * 3);
+            pendingCount -= pushed;
+        }
+        return pendingCount == 0;
+    }
+
+    private long userData(int slot) {
+        return (long) tickets[slot] << 32 | slot;
+    }
+
+    // Requests queued before the first select() are submitted by it
+    private void wakeupIfForeign() {
+        if (owner != null && Thread.currentThread() != owner) {
+            wakeup(ring);
+        }
+    }
+
+    private void release() {
+        if (ring != 0) {
+            ringClose(ring);
+            ring = 0;
+        }
+        pendingCount = 0;
+    }
+
+    // Reusable cursor over the sessions returned by the last select()
+    private final class ReadySessions implements Iterator<Session> {
+        private int next;
+        private int count;
+
+        ReadySessions reset(int count) {
+            this.next = 0;
+            this.count = count;
+            return this;
+        }
+
+        @Override
+        public final boolean hasNext() {
+            return next < count;
+        }
+
+        @Override
+        public final Session next() {
+            return ready[next++];
+        }
+
+        @Override
+        public final void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -3,7 +3,8 @@ package one.nio.net;
 import java.io.IOException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
-import java.util.Collections;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -11,10 +12,14 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 final class JavaSelector extends Selector {
     private final java.nio.channels.Selector impl;
     private final ConcurrentLinkedQueue<Session> pendingSessions;
+    private final SelectedSessions selectedSessions;
+    private Session[] selected;
 
     JavaSelector() throws IOException {
         this.impl = java.nio.channels.Selector.open();
         this.pendingSessions = new ConcurrentLinkedQueue<Session>();
+        this.selectedSessions = new SelectedSessions();
+        this.selected = new Session[64];
     }
 
     @Override
@@ -32,23 +37,47 @@ final class JavaSelector extends Selector {
     }
 
     @Override
-    public final void register(Session session) {
+    final void registerSession(Session session) {
         session.selector = this;
+        session.interestEvents = Session.READABLE;
+        session.scheduleTimeout();
         pendingSessions.add(session);
         impl.wakeup();
     }
 
     @Override
     public final void unregister(Session session) {
-        ((JavaSocket) session.socket).ch.keyFor(impl).cancel();
+        timers.remove(session);
+        SelectionKey key = ((JavaSocket) session.socket).ch.keyFor(impl);
+        if (key != null) {
+            key.cancel();
+        } else {
+            pendingSessions.remove(session);
+        }
     }
 
+    // Called under the session lock
     @Override
     public final void listen(Session session, int events) {
-        ((JavaSocket) session.socket).ch.keyFor(impl).interestOps(events);
+        session.interestEvents = events;
+        SocketChannel ch = ((JavaSocket) session.socket).ch;
+        SelectionKey key = ch.keyFor(impl);
+        if (key != null) {
+            key.interestOps(interestOps(ch, events));
+            impl.wakeup();
+        }
+    }
+
+    @Override
+    public final void wakeup() {
         impl.wakeup();
     }
 
+    @Override
+    public final boolean isEdgeTriggered() {
+        return false;
+    }
+
     @Override
     public final Iterator<Session> iterator() {
         return iteratorFor(impl.keys());
@@ -57,23 +86,77 @@ final class JavaSelector extends Selector {
     @Override
     public final Iterator<Session> select() {
         try {
-            do {
+            for (;;) {
                 registerPendingSessions();
-            } while (impl.select() == 0);
+                // With timers pending return even if nothing is selected to let them expire
+                int timeout = selectTimeout();
+                if (spinTime > 0 && timeout != 0 && spin() > 0) {
+                    break;
+                } else if (timeout > 0) {
+                    parks++;
+                    impl.select(timeout);
+                    break;
+                } else if (timeout == 0) {
+                    impl.selectNow();
+                    break;
+                } else {
+                    parks++;
+                    if (impl.select() > 0 || tasksPending()) {
+                        break;
+                    }
+                }
+            }
         } catch (Exception e) {
-            return iteratorFor(Collections.<SelectionKey>emptySet());
+            return selectedSessions.reset(0);
         }
+        selectTime = System.currentTimeMillis();
 
         Set<SelectionKey> selectedKeys = impl.selectedKeys();
-        Iterator<Session> result = iteratorFor(selectedKeys);
+        if (selectedKeys.size() > selected.length) {
+            selected = Arrays.copyOf(selected, Math.max(selectedKeys.size(), selected.length * 2));
+        }
+
+        int count = 0;
+        for (SelectionKey key : selectedKeys) {
+            if (key.isValid()) {
+                Session session = (Session) key.attachment();
+                session.events = key.readyOps();
+                selected[count++] = session;
+            }
+        }
         selectedKeys.clear();
-        return result;
+        return selectedSessions.reset(count);
+    }
+
+    private int spin() throws IOException {
+        long deadline = System.nanoTime() + spinTime;
+        do {
+            int count = impl.selectNow();
+            if (count > 0) {
+                spinWakeups++;
+                return count;
+            }
+        } while (System.nanoTime() < deadline);
+        return 0;
     }
 
     private void registerPendingSessions() throws ClosedChannelException {
         for (Session session; (session = pendingSessions.poll()) != null; ) {
-            ((JavaSocket) session.socket).ch.register(impl, Session.READABLE, session);
+            // Interest may have been changed before the channel got registered
+            synchronized (session) {
+                SocketChannel ch = ((JavaSocket) session.socket).ch;
+                ch.register(impl, interestOps(ch, session.interestEvents), session);
+            }
+        }
+    }
+
+    // A channel with a connection in progress becomes ready for OP_CONNECT rather than OP_WRITE.
+    // OP_CONNECT falls within Session.CLOSING, so the session still learns the outcome
+    private static int interestOps(SocketChannel ch, int events) {
+        if ((events & Session.WRITEABLE) != 0 && ch.isConnectionPending()) {
+            return events & ~Session.WRITEABLE | SelectionKey.OP_CONNECT;
         }
+        return events;
     }
 
     private static Iterator<Session> iteratorFor(Set<SelectionKey> keys) {
@@ -106,4 +189,32 @@ final class JavaSelector extends Selector {
             }
         };
     }
+
+    // Reusable cursor over the sessions returned by the last select()
+    private final class SelectedSessions implements Iterator<Session> {
+        private int next;
+        private int count;
+
+        SelectedSessions reset(int count) {
+            Arrays.fill(selected, count, Math.max(count, this.count), null);
+            this.next = 0;
+            this.count = count;
+            return this;
+        }
+
+        @Override
+        public final boolean hasNext() {
+            return next < count;
+        }
+
+        @Override
+        public final Session next() {
+            return selected[next++];
+        }
+
+        @Override
+        public final void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
@@ -6,6 +6,7 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketException;
 import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 
 final class JavaServerSocket extends Socket {
     ServerSocketChannel ch;
@@ -30,7 +31,8 @@ final class JavaServerSocket extends Socket {
 
     @Override
     public final JavaSocket accept() throws IOException {
-        return new JavaSocket(ch.accept());
+        SocketChannel ch = this.ch.accept();
+        return ch != null ? new JavaSocket(ch) : null;
     }
 
     @Override
@@ -38,11 +40,36 @@ final class JavaServerSocket extends Socket {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public final boolean beginConnect(InetAddress address, int port) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public final void finishConnect() {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public final void bind(InetAddress address, int port, int backlog) throws IOException {
         ch.socket().bind(new InetSocketAddress(address, port), backlog);
     }
 
+    @Override
+    public final void connectUnix(String path) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public final void bindUnix(String path, int backlog, int mode) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public final void detach() {
+        close();
+    }
+
     @Override
     public final int writeRaw(long buf, int count, int flags) throws IOException {
         throw new UnsupportedOperationException();
@@ -58,6 +85,11 @@ final class JavaServerSocket extends Socket {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public final long writev(byte[][] data, int[] offsets, int[] counts, int start, int count, int flags) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public final int readRaw(long buf, int count, int flags) throws IOException {
         throw new UnsupportedOperationException();
@@ -78,6 +110,26 @@ final class JavaServerSocket extends Socket {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public final int receive(Datagrams datagrams) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public final int send(Datagrams datagrams, int start) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public final void sendSocket(Socket socket) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public final Socket receiveSocket() {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public final void setBlocking(boolean blocking) {
         try {
@@ -120,6 +172,11 @@ final class JavaServerSocket extends Socket {
         }
     }
 
+    @Override
+    public final void setReusePort(boolean reusePort) {
+        // Ignore
+    }
+
     @Override
     public final void setRecvBuffer(int recvBuf) {
         try {
@@ -134,6 +191,11 @@ final class JavaServerSocket extends Socket {
         // Ignore
     }
 
+    @Override
+    public final int getIncomingCpu() {
+        return -1;
+    }
+
     @Override
     public final InetSocketAddress getLocalAddress() {
         return (InetSocketAddress) ch.socket().getLocalSocketAddress();
@@ -143,4 +205,9 @@ final class JavaServerSocket extends Socket {
     public final InetSocketAddress getRemoteAddress() {
         throw new UnsupportedOperationException();
     }
+
+    @Override
+    public final int getPeerUid() {
+        throw new UnsupportedOperationException();
+    }
 }
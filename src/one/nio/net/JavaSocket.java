@@ -45,11 +45,38 @@ final class JavaSocket extends Socket {
         ch.connect(new InetSocketAddress(address, port));
     }
 
+    @Override
+    public final boolean beginConnect(InetAddress address, int port) throws IOException {
+        return ch.connect(new InetSocketAddress(address, port));
+    }
+
+    @Override
+    public final void finishConnect() throws IOException {
+        if (!ch.finishConnect()) {
+            throw new SocketException("Connection is still in progress");
+        }
+    }
+
     @Override
     public final void bind(InetAddress address, int port, int backlog) throws IOException {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public final void connectUnix(String path) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public final void bindUnix(String path, int backlog, int mode) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public final void detach() {
+        close();
+    }
+
     @Override
     public final int writeRaw(long buf, int count, int flags) throws IOException {
         return ch.write(DirectMemory.wrap(buf, count));
@@ -65,6 +92,15 @@ final class JavaSocket extends Socket {
         ch.write(ByteBuffer.wrap(data, offset, count));
     }
 
+    @Override
+    public final long writev(byte[][] data, int[] offsets, int[] counts, int start, int count, int flags) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            buffers[i] = ByteBuffer.wrap(data[start + i], offsets[start + i], counts[start + i]);
+        }
+        return ch.write(buffers);
+    }
+
     @Override
     public final int readRaw(long buf, int count, int flags) throws IOException {
         int result = ch.read(DirectMemory.wrap(buf, count));
@@ -98,6 +134,26 @@ final class JavaSocket extends Socket {
         return file.getChannel().transferTo(offset, count, ch);
     }
 
+    @Override
+    public final int receive(Datagrams datagrams) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public final int send(Datagrams datagrams, int start) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public final void sendSocket(Socket socket) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public final Socket receiveSocket() {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public final void setBlocking(boolean blocking) {
         try {
@@ -148,6 +204,11 @@ final class JavaSocket extends Socket {
         }
     }
 
+    @Override
+    public final void setReusePort(boolean reusePort) {
+        // Ignore
+    }
+
     @Override
     public final void setRecvBuffer(int recvBuf) {
         try {
@@ -166,6 +227,11 @@ final class JavaSocket extends Socket {
         }
     }
 
+    @Override
+    public final int getIncomingCpu() {
+        return -1;
+    }
+
     @Override
     public final InetSocketAddress getLocalAddress() {
         return (InetSocketAddress) ch.socket().getLocalSocketAddress();
@@ -175,4 +241,9 @@ final class JavaSocket extends Socket {
     public final InetSocketAddress getRemoteAddress() {
         return (InetSocketAddress) ch.socket().getRemoteSocketAddress();
     }
+
+    @Override
+    public final int getPeerUid() {
+        throw new UnsupportedOperationException();
+    }
 }
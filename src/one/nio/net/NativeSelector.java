@@ -16,22 +16,40 @@ final class NativeSelector extends Selector {
     private static final int EPOLL_CTL_MOD = 3;
     private static final int EPOLL_MAX_EVENTS  = 1024;
     private static final int EPOLL_STRUCT_SIZE = 12;
+    private static final int EPOLLET = 1 << 31;
+    private static final int WAKEUP_SLOT = -2;
 
     private static native int epollCreate();
-    private static native void epollClose(int epollFD);
-    private static native int epollWait(int epollFD, long epollStruct, int epollElements);
+    private static native void epollClose(int epollFD, int wakeupFD);
+    private static native int epollWait(int epollFD, long epollStruct, int epollElements, int timeout);
     private static native void epollCtl(int epollFD, int op, int fd, int data, int events);
+    private static native int eventfdCreate();
+    private static native void eventfdWrite(int fd);
+    private static native void eventfdRead(int fd);
 
     private final int epollFD;
+    private final int wakeupFD;
     private final long epollStruct;
+    private final boolean edgeTriggered;
     private Session[] sessions;
     private int size;
     private volatile int closeFlag;
 
-    NativeSelector() {
+    // Interest changes made by the selecting thread are deferred until the next select()
+    private Thread owner;
+    private Session[] pendingChanges;
+    private int pendingCount;
+
+    private final SelectedSessions selectedSessions = new SelectedSessions();
+
+    NativeSelector(boolean edgeTriggered) {
         this.epollFD = epollCreate();
+        this.wakeupFD = eventfdCreate();
+        epollCtl(epollFD, EPOLL_CTL_ADD, wakeupFD, WAKEUP_SLOT, Session.READABLE);
         this.epollStruct = DirectMemory.allocate(EPOLL_MAX_EVENTS * EPOLL_STRUCT_SIZE, this);
+        this.edgeTriggered = edgeTriggered;
         this.sessions = new Session[EPOLL_MAX_EVENTS];
+        this.pendingChanges = new Session[64];
     }
 
     @Override
@@ -44,25 +62,90 @@ final class NativeSelector extends Selector {
         if (closeFlag == 0) {
             closeFlag = -1;
             size = 0;
-            epollClose(epollFD);
+            epollClose(epollFD, wakeupFD);
+        }
+    }
+
+    @Override
+    public final synchronized void wakeup() {
+        if (closeFlag == 0) {
+            eventfdWrite(wakeupFD);
         }
     }
 
     @Override
-    public final void register(Session session) {
+    public final boolean isEdgeTriggered() {
+        return edgeTriggered;
+    }
+
+    @Override
+    final void registerSession(Session session) {
         add(session);
-        epollCtl(epollFD, EPOLL_CTL_ADD, ((NativeSocket) session.socket).fd, session.slot, Session.READABLE);
+        session.interestPending = false;
+        session.scheduleTimeout();
+        if (edgeTriggered) {
+            // Register once for both directions; sessions drain the socket until EAGAIN
+            session.interestEvents = session.registeredEvents = Session.READABLE | Session.WRITEABLE;
+            epollCtl(epollFD, EPOLL_CTL_ADD, ((NativeSocket) session.socket).fd, session.slot,
+                    Session.READABLE | Session.WRITEABLE | EPOLLET);
+        } else {
+            session.interestEvents = session.registeredEvents = Session.READABLE;
+            epollCtl(epollFD, EPOLL_CTL_ADD, ((NativeSocket) session.socket).fd, session.slot, Session.READABLE);
+        }
     }
 
     @Override
     public final void unregister(Session session) {
         remove(session);
+        timers.remove(session);
         epollCtl(epollFD, EPOLL_CTL_DEL, ((NativeSocket) session.socket).fd, session.slot, 0);
     }
 
+    // Called under the session lock
     @Override
     public final void listen(Session session, int events) {
-        epollCtl(epollFD, EPOLL_CTL_MOD, ((NativeSocket) session.socket).fd, session.slot, events);
+        if (edgeTriggered) {
+            // Writes are always watched; only suspended reading changes the registration
+            events = (events & Session.READABLE) != 0 ? Session.READABLE | Session.WRITEABLE : Session.WRITEABLE;
+        }
+
+        session.interestEvents = events;
+        if (Thread.currentThread() != owner) {
+            modify(session);
+        } else if (!session.interestPending) {
+            session.interestPending = true;
+            if (pendingCount == pendingChanges.length) {
+                pendingChanges = Arrays.copyOf(pendingChanges, pendingCount * 2);
+            }
+            pendingChanges[pendingCount++] = session;
+        }
+    }
+
+    private void modify(Session session) {
+        int events = session.interestEvents;
+        if (events != session.registeredEvents) {
+            int fd = ((NativeSocket) session.socket).fd;
+            if (fd >= 0) {
+                session.registeredEvents = events;
+                epollCtl(epollFD, EPOLL_CTL_MOD, fd, session.slot, edgeTriggered ? events | EPOLLET : events);
+            }
+        }
+    }
+
+    private void applyPendingChanges() {
+        Session[] pendingChanges = this.pendingChanges;
+        for (int i = 0; i < pendingCount; i++) {
+            Session session = pendingChanges[i];
+            pendingChanges[i] = null;
+            synchronized (session) {
+                // The session may have been moved to another selector meanwhile
+                if (session.selector == this) {
+                    session.interestPending = false;
+                    modify(session);
+                }
+            }
+        }
+        pendingCount = 0;
     }
 
     @Override
@@ -101,42 +184,84 @@ final class NativeSelector extends Selector {
 
     @Override
     public final Iterator<Session> select() {
-        final int count = epollWait(epollFD, epollStruct, EPOLL_MAX_EVENTS) | closeFlag;
+        owner = Thread.currentThread();
+        if (pendingCount > 0) {
+            applyPendingChanges();
+        }
 
-        return new Iterator<Session>() {
-            private long nextAddr = epollStruct;
-            private long lastAddr = nextAddr + count * EPOLL_STRUCT_SIZE;
-            private Session next = findNext();
-
-            private Session findNext() {
-                for (long currentAddr = nextAddr; currentAddr < lastAddr; currentAddr = nextAddr) {
-                    Session session = sessions[unsafe.getInt(currentAddr + 4)];
-                    nextAddr = currentAddr + EPOLL_STRUCT_SIZE;
-                    if (session != null) {
-                        session.events = unsafe.getInt(currentAddr);
-                        return session;
-                    }
+        int timeout = selectTimeout();
+        int count = spinTime > 0 && timeout != 0 ? spin() : 0;
+        if (count == 0) {
+            parks++;
+            count = epollWait(epollFD, epollStruct, EPOLL_MAX_EVENTS, timeout);
+        }
+        count |= closeFlag;
+        selectTime = System.currentTimeMillis();
+
+        selectedSessions.reset(count);
+        return selectedSessions;
+    }
+
+    private int spin() {
+        long deadline = System.nanoTime() + spinTime;
+        do {
+            int count = epollWait(epollFD, epollStruct, EPOLL_MAX_EVENTS, 0);
+            if (count != 0 || closeFlag != 0) {
+                if (count > 0) {
+                    spinWakeups++;
                 }
-                return null;
+                return count;
             }
+        } while (System.nanoTime() < deadline);
+        return 0;
+    }
 
-            @Override
-            public final boolean hasNext() {
-                return next != null;
-            }
+    // Reusable cursor over the epoll events returned by the last select()
+    private final class SelectedSessions implements Iterator<Session> {
+        private long nextAddr;
+        private long lastAddr;
+        private Session next;
 
-            @Override
-            public final Session next() {
-                Session handle = next;
-                next = findNext();
-                return handle;
-            }
+        void reset(int count) {
+            nextAddr = epollStruct;
+            lastAddr = nextAddr + count * EPOLL_STRUCT_SIZE;
+            next = findNext();
+        }
 
-            @Override
-            public final void remove() {
-                throw new UnsupportedOperationException();
+        private Session findNext() {
+            for (long currentAddr = nextAddr; currentAddr < lastAddr; currentAddr = nextAddr) {
+                int slot = unsafe.getInt(currentAddr + 4);
+                nextAddr = currentAddr + EPOLL_STRUCT_SIZE;
+                if (slot == WAKEUP_SLOT) {
+                    eventfdRead(wakeupFD);
+                    continue;
+                }
+
+                Session session = sessions[slot];
+                if (session != null) {
+                    session.events = unsafe.getInt(currentAddr);
+                    return session;
+                }
             }
-        };
+            return null;
+        }
+
+        @Override
+        public final boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public final Session next() {
+            Session handle = next;
+            next = findNext();
+            return handle;
+        }
+
+        @Override
+        public final void remove() {
+            throw new UnsupportedOperationException();
+        }
     }
 
     private synchronized void add(Session session) {
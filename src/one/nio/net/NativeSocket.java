@@ -26,7 +26,8 @@ final class NativeSocket extends Socket {
     
     @Override
     public final NativeSocket accept() throws IOException {
-        return new NativeSocket(accept0());
+        int fd = accept0();
+        return fd >= 0 ? new NativeSocket(fd) : null;
     }
 
     @Override
@@ -67,14 +68,31 @@ final class NativeSocket extends Socket {
         connect0(address.getAddress(), port);
     }
 
+    @Override
+    public final boolean beginConnect(InetAddress address, int port) throws IOException {
+        return beginConnect0(address.getAddress(), port);
+    }
+
+    @Override
+    public final native void finishConnect() throws IOException;
+
     @Override
     public final void bind(InetAddress address, int port, int backlog) throws IOException {
         bind0(address.getAddress(), port, backlog);
     }
 
+    @Override
+    public final native void connectUnix(String path) throws IOException;
+
+    @Override
+    public final native void bindUnix(String path, int backlog, int mode) throws IOException;
+
     @Override
     public final native void close();
 
+    @Override
+    public final native void detach();
+
     @Override
     public final native int writeRaw(long buf, int count, int flags) throws IOException;
 
@@ -84,6 +102,9 @@ final class NativeSocket extends Socket {
     @Override
     public final native void writeFully(byte[] data, int offset, int count) throws IOException;
 
+    @Override
+    public final native long writev(byte[][] data, int[] offsets, int[] counts, int start, int count, int flags) throws IOException;
+
     @Override
     public final native int readRaw(long buf, int count, int flags) throws IOException;
 
@@ -98,6 +119,31 @@ final class NativeSocket extends Socket {
         return sendFile0(Mem.getFD(file.getFD()), offset, count);
     }
 
+    // Fills the batch with up to its capacity datagrams, but no more than 256 at a time
+    @Override
+    public final int receive(Datagrams datagrams) throws IOException {
+        return datagrams.count = recvmmsg0(datagrams.buffer, datagrams.maxSize, datagrams.capacity,
+                datagrams.lengths, datagrams.addresses);
+    }
+
+    // Sends datagrams from start up to the end of the batch, but no more than 256 at a time;
+    // returns the number of datagrams sent
+    @Override
+    public final int send(Datagrams datagrams, int start) throws IOException {
+        return sendmmsg0(datagrams.buffer, datagrams.maxSize, start, datagrams.count - start,
+                datagrams.lengths, datagrams.addresses);
+    }
+
+    @Override
+    public final void sendSocket(Socket socket) throws IOException {
+        sendSocket0(((NativeSocket) socket).fd);
+    }
+
+    @Override
+    public final NativeSocket receiveSocket() throws IOException {
+        return new NativeSocket(receiveSocket0());
+    }
+
     @Override
     public final native void setBlocking(boolean blocking);
 
@@ -116,17 +162,33 @@ final class NativeSocket extends Socket {
     @Override
     public final native void setReuseAddr(boolean reuseAddr);
 
+    @Override
+    public final native void setReusePort(boolean reusePort);
+
     @Override
     public final native void setRecvBuffer(int recvBuf);
 
     @Override
     public final native void setSendBuffer(int sendBuf);
 
+    @Override
+    public final native int getIncomingCpu();
+
     private static native int socket0() throws IOException;
+    static native int unixSocket0() throws IOException;
+    static native int datagramSocket0() throws IOException;
     private native int accept0() throws IOException;
     private native void connect0(byte[] address, int port) throws IOException;
+    private native boolean beginConnect0(byte[] address, int port) throws IOException;
     private native void bind0(byte[] address, int port, int backlog) throws IOException;
     private native long sendFile0(int sourceFD, long offset, long count) throws IOException;
+    private native int recvmmsg0(long buf, int size, int count, int[] lengths, byte[] addresses) throws IOException;
+    private native int sendmmsg0(long buf, int size, int start, int count, int[] lengths, byte[] addresses) throws IOException;
+    private native void sendSocket0(int fd) throws IOException;
+    private native int receiveSocket0() throws IOException;
     private native int getsockname(byte[] buffer);
     private native int getpeername(byte[] buffer);
+
+    @Override
+    public final native int getPeerUid() throws IOException;
 }
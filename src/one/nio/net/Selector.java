@@ -1,21 +1,188 @@
 package one.nio.net;
 
+import one.nio.mem.DirectMemory;
 import one.nio.os.NativeLibrary;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 public abstract class Selector implements Iterable<Session>, Closeable {
+    public static final int DIRECT_BUFFER_SIZE = 65536;
+
+    private static final AtomicIntegerFieldUpdater<Selector> wakeupUpdater =
+            AtomicIntegerFieldUpdater.newUpdater(Selector.class, "wakeupPending");
+
+    private long directBuffer;
+
+    // Wall clock of the last select() wakeup, shared by all sessions processed in the batch
+    long selectTime;
+
+    final TimerWheel timers = new TimerWheel();
+
+    // Busy-polling before a blocking wait, written and counted by the selecting thread
+    long spinTime;
+    long spinWakeups;
+    long parks;
+    private Thread flushThread;
+    private Session[] deferred = new Session[16];
+    private int deferredCount;
+
+    private final TaskQueue tasks = new TaskQueue();
+    private volatile int wakeupPending;
+    private volatile Selector successor;
+    private Selector sessionSuccessor;
+
     public abstract int size();
     public abstract void close();
-    public abstract void register(Session session);
+    abstract void registerSession(Session session);
     public abstract void unregister(Session session);
     public abstract void listen(Session session, int events);
     public abstract Iterator<Session> iterator();
     public abstract Iterator<Session> select();
+    public abstract boolean isEdgeTriggered();
+    public abstract void wakeup();
+
+    // Off-heap read buffer shared by the sessions while they are processed by the selecting thread
+    public final long directBuffer() {
+        if (directBuffer == 0) {
+            directBuffer = DirectMemory.allocate(DIRECT_BUFFER_SIZE, this);
+        }
+        return directBuffer;
+    }
+
+    // select() polls without blocking for the given time before parking in the kernel
+    public final void setSpin(int spinMicros) {
+        this.spinTime = spinMicros * 1000L;
+    }
+
+    // Number of select() calls that found events while spinning
+    public final long getSpinWakeups() {
+        return spinWakeups;
+    }
+
+    // Number of select() calls that blocked in the kernel
+    public final long getParks() {
+        return parks;
+    }
+
+    public final void resetStats() {
+        spinWakeups = 0;
+        parks = 0;
+    }
+
+    // Times out sessions idle for longer than their timeouts; called by the selecting thread
+    public final int expireSessions() {
+        return timers.expire(System.currentTimeMillis());
+    }
+
+    // How long select() may block before the timer wheel needs attention, -1 for no limit
+    final int selectTimeout() {
+        return timers.timeout(System.currentTimeMillis());
+    }
+
+    // Session writes made by the calling thread are buffered until the session is returned by nextDeferred()
+    public final void enableDeferredFlush() {
+        flushThread = Thread.currentThread();
+    }
+
+    public final Session nextDeferred() {
+        if (deferredCount == 0) {
+            return null;
+        }
+        Session session = deferred[--deferredCount];
+        deferred[deferredCount] = null;
+        session.deferred = false;
+        return session;
+    }
+
+    // Called under the session lock
+    final boolean defer(Session session) {
+        if (Thread.currentThread() != flushThread) {
+            return false;
+        }
+        if (!session.deferred) {
+            if (deferredCount == deferred.length) {
+                deferred = Arrays.copyOf(deferred, deferredCount * 2);
+            }
+            deferred[deferredCount++] = session;
+            session.deferred = true;
+        }
+        return true;
+    }
+
+    // Adds the session to this selector or, once the selector has stopped, to its successor
+    public final void register(Session session) {
+        Selector successor;
+        synchronized (this) {
+            successor = sessionSuccessor;
+            if (successor == null) {
+                registerSession(session);
+                return;
+            }
+        }
+        successor.register(session);
+    }
+
+    // Called by the selecting thread when it stops for good, before moving its sessions away:
+    // sessions registered later through a stale reference to this selector go to the successor
+    public final synchronized void forwardSessions(Selector successor) {
+        this.sessionSuccessor = successor;
+    }
+
+    // Hands the task over to the selecting thread; at most one wakeup is issued until the queue is drained
+    public final void execute(Runnable task) {
+        tasks.offer(task);
+        if (successor != null) {
+            forwardTasks();
+        } else if (wakeupPending == 0 && wakeupUpdater.compareAndSet(this, 0, 1)) {
+            wakeup();
+        }
+    }
+
+    // Called by the selecting thread when it stops for good: pending tasks and tasks
+    // submitted later through a stale reference to this selector run on the successor
+    public final void forwardTasks(Selector successor) {
+        this.successor = successor;
+        forwardTasks();
+    }
+
+    private void forwardTasks() {
+        synchronized (tasks) {
+            for (Runnable task; (task = tasks.poll()) != null; ) {
+                successor.execute(task);
+            }
+        }
+    }
+
+    // Called by the selecting thread after each select()
+    public final Runnable nextTask() {
+        Runnable task = tasks.poll();
+        if (task == null && wakeupPending != 0) {
+            // Producers seeing the flag cleared will wake the selector up again
+            wakeupPending = 0;
+            task = tasks.poll();
+        }
+        return task;
+    }
+
+    final boolean tasksPending() {
+        return wakeupPending != 0;
+    }
 
     public static Selector create() throws IOException {
-        return NativeLibrary.IS_SUPPORTED ? new NativeSelector() : new JavaSelector();
+        return create(false);
+    }
+
+    public static Selector create(boolean edgeTriggered) throws IOException {
+        if (!NativeLibrary.IS_SUPPORTED) {
+            return new JavaSelector();
+        } else if (!edgeTriggered && IoUringSelector.IS_SUPPORTED) {
+            return new IoUringSelector();
+        } else {
+            return new NativeSelector(edgeTriggered);
+        }
     }
 }
@@ -4,6 +4,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketException;
+import java.util.Arrays;
 
 public class Session implements Closeable {
     public static final int READABLE  = 1;
@@ -11,18 +12,48 @@ public class Session implements Closeable {
     public static final int CLOSING   = 0x18;
 
     protected final Socket socket;
-    protected Selector selector;
+    protected volatile Selector selector;
     protected int slot;
     protected int events;
     protected boolean closing;
     protected WriteQueue writeQueue;
     protected volatile long lastAccessTime;
 
+    // Selector bookkeeping of epoll interest, accessed under the session lock
+    int interestEvents;
+    int registeredEvents;
+    boolean interestPending;
+
+    // Output is buffered until the end of the current select cycle
+    boolean deferred;
+
+    // Idle timeouts while waiting for a request and while output is pending, 0 means no timeout
+    private volatile int readTimeout;
+    private volatile int writeTimeout;
+
+    // Reading is suspended while more than highWatermark bytes wait to be written
+    // and resumed once the queue drains to lowWatermark
+    private volatile int highWatermark;
+    private volatile int lowWatermark;
+    private boolean readSuspended;
+
+    // Position in the selector's TimerWheel, guarded by the wheel
+    int timerBucket = -1;
+    Session timerPrev;
+    Session timerNext;
+
+    boolean readAgain;
+    private long processCount;
+
     public Session(Socket socket) {
         this.socket = socket;
         this.lastAccessTime = System.currentTimeMillis();
     }
 
+    public final Socket socket() {
+        return socket;
+    }
+
     public final String clientIp() {
         InetSocketAddress address = socket.getRemoteAddress();
         return address == null ? "<unconnected>" : address.getAddress().getHostAddress();
@@ -32,8 +63,102 @@ public class Session implements Closeable {
         return lastAccessTime;
     }
 
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public int getWriteTimeout() {
+        return writeTimeout;
+    }
+
+    public void setTimeouts(int readTimeout, int writeTimeout) {
+        this.readTimeout = readTimeout;
+        this.writeTimeout = writeTimeout;
+        if (selector != null) {
+            scheduleTimeout();
+        }
+    }
+
+    public int getHighWatermark() {
+        return highWatermark;
+    }
+
+    public int getLowWatermark() {
+        return lowWatermark;
+    }
+
+    public void setWatermarks(int highWatermark, int lowWatermark) {
+        this.highWatermark = highWatermark;
+        this.lowWatermark = Math.min(lowWatermark, highWatermark);
+    }
+
+    // The earliest moment the session may expire in any state
+    private int minTimeout() {
+        int readTimeout = this.readTimeout;
+        int writeTimeout = this.writeTimeout;
+        return readTimeout > 0 && writeTimeout > 0 ? Math.min(readTimeout, writeTimeout) : Math.max(readTimeout, writeTimeout);
+    }
+
+    final void scheduleTimeout() {
+        int timeout = minTimeout();
+        if (timeout > 0) {
+            long lastAccessTime = this.lastAccessTime;
+            if (selector.timers.add(this, (lastAccessTime > 0 ? lastAccessTime : System.currentTimeMillis()) + timeout)) {
+                selector.wakeup();
+            }
+        }
+    }
+
+    // Called by the selecting thread when the session's timer bucket is due
+    final boolean checkTimeout(long now) {
+        if (!socket.isOpen()) {
+            return false;
+        }
+
+        int timeout = writePending() ? writeTimeout : readTimeout;
+        long lastAccessTime = this.lastAccessTime;
+        if (timeout > 0 && lastAccessTime > 0 && lastAccessTime + timeout <= now) {
+            onTimeout();
+            return true;
+        }
+
+        // Processing in progress, active recently or no timeout in the current state: check again later
+        if (timeout <= 0) {
+            timeout = minTimeout();
+        }
+        if (timeout > 0) {
+            selector.timers.add(this, (lastAccessTime > 0 ? lastAccessTime : now) + timeout);
+        }
+        return false;
+    }
+
+    protected void onTimeout() {
+        close();
+    }
+
+    // Number of process() calls since the previous call; used by the selecting thread to find busy sessions
+    public final long takeProcessCount() {
+        long count = processCount;
+        processCount = 0;
+        return count;
+    }
+
+    // Moves the session to another selector. Must be called by the thread selecting on the current one
+    // between process() calls, so that events already selected for the session have been handled.
+    public synchronized void migrate(Selector target) {
+        if (selector == target || !socket.isOpen()) {
+            return;
+        }
+        selector.unregister(this);
+        target.register(this);
+        if (writePending()) {
+            // A stopped target passes the session on to its successor
+            selector.listen(this, readSuspended ? WRITEABLE : READABLE | WRITEABLE);
+        }
+    }
+
     public final boolean writePending() {
-        return writeQueue != null;
+        return writeQueue != null && !writeQueue.isEmpty();
     }
 
     @Override
@@ -46,8 +171,24 @@ public class Session implements Closeable {
         }
     }
 
+    // Releases the socket after it has been passed to another process, leaving the connection open
+    public synchronized void detach() {
+        if (socket.isOpen()) {
+            closing = true;
+            writeQueue = null;
+            selector.unregister(this);
+            socket.detach();
+        }
+    }
+
+    // Whether the connection can be continued by another process: no partially read request
+    // and no pending output. Subclasses keeping protocol state must refine this
+    public synchronized boolean isIdle() {
+        return !closing && !writePending();
+    }
+
     public synchronized void scheduleClose() {
-        if (writeQueue == null) {
+        if (!writePending()) {
             close();
         } else {
             closing = true;
@@ -55,78 +196,231 @@ public class Session implements Closeable {
     }
 
     public synchronized void getQueueStats(long[] stats) {
-        int length = 0;
-        long bytes = 0;
-        for (WriteQueue head = writeQueue; head != null; head = head.next) {
-            length++;
-            bytes += head.count;
+        if (writeQueue == null) {
+            stats[0] = 0;
+            stats[1] = 0;
+        } else {
+            stats[0] = writeQueue.length();
+            stats[1] = writeQueue.bytes();
         }
-        stats[0] = length;
-        stats[1] = bytes;
     }
 
     public synchronized void write(byte[] data, int offset, int count) throws IOException {
-        if (writeQueue == null) {
-            int bytesWritten = socket.write(data, offset, count);
-            if (bytesWritten < count) {
+        if (!writePending()) {
+            if (selector.defer(this)) {
+                if (writeQueue == null) {
+                    writeQueue = new WriteQueue();
+                }
+                writeQueue.add(data, offset, count);
+                return;
+            }
+
+            // Write until EAGAIN: a short write alone does not guarantee a new edge-triggered event
+            while (count > 0) {
+                int bytesWritten = socket.write(data, offset, count);
+                if (bytesWritten == 0) {
+                    if (writeQueue == null) {
+                        writeQueue = new WriteQueue();
+                    }
+                    writeQueue.add(data, offset, count);
+                    waitWriteable();
+                    return;
+                }
                 offset += bytesWritten;
                 count -= bytesWritten;
-                writeQueue = new WriteQueue(data, offset, count);
-                selector.listen(this, WRITEABLE);
             }
         } else if (!closing) {
-            WriteQueue tail = writeQueue;
-            while (tail.next != null) {
-                tail = tail.next;
+            writeQueue.add(data, offset, count);
+            checkHighWatermark();
+        } else {
+            throw new SocketException("Socket closed");
+        }
+    }
+
+    // Writes whole buffers in order with as few system calls as the socket buffer allows
+    public synchronized void write(byte[][] data, int count) throws IOException {
+        if (!writePending()) {
+            if (writeQueue == null) {
+                writeQueue = new WriteQueue();
             }
-            tail.next = new WriteQueue(data, offset, count);
+            for (int i = 0; i < count; i++) {
+                writeQueue.add(data[i], 0, data[i].length);
+            }
+            if (!selector.defer(this) && !writeQueue.flush(socket, 0)) {
+                waitWriteable();
+            }
+        } else if (!closing) {
+            for (int i = 0; i < count; i++) {
+                writeQueue.add(data[i], 0, data[i].length);
+            }
+            checkHighWatermark();
         } else {
             throw new SocketException("Socket closed");
         }
     }
 
+    private void checkHighWatermark() {
+        if (!deferred && !readSuspended && writeQueue.bytes() > highWatermark) {
+            readSuspended = true;
+            selector.listen(this, WRITEABLE);
+        }
+    }
+
+    // Passes the data to the selecting thread instead of competing with it for the session lock
+    public void writeLater(final byte[] data, final int offset, final int count) {
+        selector.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(data, offset, count);
+                } catch (IOException e) {
+                    close();
+                }
+            }
+        });
+    }
+
+    // Sends output buffered during the select cycle, hinting the kernel to coalesce it into full segments
+    public synchronized void flush() throws IOException {
+        if (writeQueue == null || !socket.isOpen()) {
+            return;
+        }
+        if (!writeQueue.flush(socket, Socket.MSG_MORE)) {
+            waitWriteable();
+        } else if (closing) {
+            close();
+        }
+    }
+
+    // Called under the session lock when the socket buffer is full and output remains queued
+    void waitWriteable() {
+        readSuspended = writeQueue.bytes() > highWatermark;
+        selector.listen(this, readSuspended ? WRITEABLE : READABLE | WRITEABLE);
+    }
+
     protected synchronized void processWrite() throws Exception {
-        for (WriteQueue head = writeQueue; head != null; head = head.next) {
-            int bytesWritten = socket.write(head.data, head.offset, head.count);
-            if (bytesWritten < head.count) {
-                head.offset += bytesWritten;
-                head.count -= bytesWritten;
-                writeQueue = head;
-                return;
-            } else if (closing) {
-                close();
-                return;
+        if (writeQueue != null && !writeQueue.flush(socket, 0)) {
+            if (readSuspended && writeQueue.bytes() <= lowWatermark) {
+                readSuspended = false;
+                selector.listen(this, READABLE | WRITEABLE);
             }
+            return;
+        }
+        readSuspended = false;
+        if (closing) {
+            close();
+        } else {
+            selector.listen(this, READABLE);
         }
-        writeQueue = null;
-        selector.listen(this, READABLE);
     }
 
     protected void processRead(byte[] buffer) throws Exception {
-       socket.read(buffer, 0, buffer.length);
+       read(buffer, 0, buffer.length);
+    }
+
+    // In edge-triggered mode processRead() is repeated until a read returns less than requested
+    protected final int read(byte[] data, int offset, int count) throws IOException {
+        int bytesRead = socket.read(data, offset, count);
+        readAgain = count > 0 && bytesRead == count;
+        return bytesRead;
+    }
+
+    protected final int readRaw(long address, int count) throws IOException {
+        int bytesRead = socket.readRaw(address, count, 0);
+        readAgain = count > 0 && bytesRead == count;
+        return bytesRead;
     }
 
     public void process(byte[] buffer) throws Exception {
         lastAccessTime = 0;
+        processCount++;
         if ((events & WRITEABLE) != 0) {
             processWrite();
         }
         if ((events & (READABLE | CLOSING)) != 0) {
-            processRead(buffer);
+            if (selector.isEdgeTriggered()) {
+                do {
+                    readAgain = false;
+                    processRead(buffer);
+                } while (readAgain && !readSuspended && socket.isOpen());
+            } else {
+                processRead(buffer);
+            }
         }
-        lastAccessTime = System.currentTimeMillis();
+        lastAccessTime = selector.selectTime;
     }
 
-    private static class WriteQueue {
-        byte[] data;
-        int offset;
-        int count;
-        WriteQueue next;
+    // Pending buffers are kept in parallel arrays, so that a range of them can be passed to writev at once
+    static final class WriteQueue {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private byte[][] data = new byte[INITIAL_CAPACITY][];
+        private int[] offsets = new int[INITIAL_CAPACITY];
+        private int[] counts = new int[INITIAL_CAPACITY];
+        private int head;
+        private int tail;
+        private long bytes;
+
+        boolean isEmpty() {
+            return head == tail;
+        }
+
+        int length() {
+            return tail - head;
+        }
 
-        WriteQueue(byte[] data, int offset, int count) {
-            this.data = data;
-            this.offset = offset;
-            this.count = count;
+        long bytes() {
+            return bytes;
+        }
+
+        void add(byte[] data, int offset, int count) {
+            if (count <= 0) {
+                return;
+            }
+
+            if (tail == counts.length) {
+                int length = tail - head;
+                if (length * 2 > counts.length) {
+                    this.data = Arrays.copyOfRange(this.data, head, head + counts.length * 2);
+                    this.offsets = Arrays.copyOfRange(offsets, head, head + counts.length * 2);
+                    this.counts = Arrays.copyOfRange(counts, head, head + counts.length * 2);
+                } else {
+                    System.arraycopy(this.data, head, this.data, 0, length);
+                    System.arraycopy(offsets, head, offsets, 0, length);
+                    System.arraycopy(counts, head, counts, 0, length);
+                    Arrays.fill(this.data, length, tail, null);
+                }
+                head = 0;
+                tail = length;
+            }
+
+            this.data[tail] = data;
+            this.offsets[tail] = offset;
+            this.counts[tail] = count;
+            this.bytes += count;
+            tail++;
+        }
+
+        // Returns false if the socket buffer is full before the queue is drained
+        boolean flush(Socket socket, int flags) throws IOException {
+            while (head < tail) {
+                long bytesWritten = socket.writev(data, offsets, counts, head, tail - head, flags);
+                if (bytesWritten == 0) {
+                    return false;
+                }
+                bytes -= bytesWritten;
+                while (head < tail && bytesWritten >= counts[head]) {
+                    bytesWritten -= counts[head];
+                    data[head++] = null;
+                }
+                if (bytesWritten > 0) {
+                    offsets[head] += (int) bytesWritten;
+                    counts[head] -= (int) bytesWritten;
+                }
+            }
+            head = tail = 0;
+            bytes = 0;
+            return true;
         }
     }
 }
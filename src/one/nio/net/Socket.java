@@ -16,28 +16,54 @@ public abstract class Socket implements Closeable {
     public static final int MSG_WAITALL   = 0x100;
     public static final int MSG_MORE      = 0x8000;
 
+    // Hosts of the form unix:/path/to/socket denote Unix domain stream sockets
+    public static final String UNIX_PREFIX = "unix:";
+
     public abstract boolean isOpen();
     public abstract void close();
     public abstract Socket accept() throws IOException;
     public abstract void connect(InetAddress address, int port) throws IOException;
+    // Non-blocking connect: returns false if the connection is in progress,
+    // in which case finishConnect() tells the outcome once the socket becomes writeable
+    public abstract boolean beginConnect(InetAddress address, int port) throws IOException;
+    public abstract void finishConnect() throws IOException;
     public abstract void bind(InetAddress address, int port, int backlog) throws IOException;
+    public abstract void connectUnix(String path) throws IOException;
+    // The socket file gets the given permission bits, or the ones allowed by umask if mode is negative
+    public abstract void bindUnix(String path, int backlog, int mode) throws IOException;
+    // Closes the descriptor without shutting the connection down, e.g. after passing it to another process
+    public abstract void detach();
     public abstract int writeRaw(long buf, int count, int flags) throws IOException;
     public abstract int write(byte[] data, int offset, int count) throws IOException;
     public abstract void writeFully(byte[] data, int offset, int count) throws IOException;
+    public abstract long writev(byte[][] data, int[] offsets, int[] counts, int start, int count, int flags) throws IOException;
     public abstract int readRaw(long buf, int count, int flags) throws IOException;
     public abstract int read(byte[] data, int offset, int count) throws IOException;
     public abstract void readFully(byte[] data, int offset, int count) throws IOException;
     public abstract long sendFile(RandomAccessFile file, long offset, long count) throws IOException;
+    public abstract int receive(Datagrams datagrams) throws IOException;
+    public abstract int send(Datagrams datagrams, int start) throws IOException;
+    // Pass descriptors over a Unix domain socket; the receiver gets its own copy of the socket
+    public abstract void sendSocket(Socket socket) throws IOException;
+    public abstract Socket receiveSocket() throws IOException;
     public abstract void setBlocking(boolean blocking);
     public abstract void setTimeout(int timeout);
     public abstract void setKeepAlive(boolean keepAlive);
     public abstract void setNoDelay(boolean noDelay);
     public abstract void setDeferAccept(boolean deferAccept);
     public abstract void setReuseAddr(boolean reuseAddr);
+    public abstract void setReusePort(boolean reusePort);
     public abstract void setRecvBuffer(int recvBuf);
     public abstract void setSendBuffer(int sendBuf);
+    public abstract int getIncomingCpu();
     public abstract InetSocketAddress getLocalAddress();
     public abstract InetSocketAddress getRemoteAddress();
+    // Effective uid of the process on the other end of a Unix domain socket at the time it connected
+    public abstract int getPeerUid() throws IOException;
+
+    public void bindUnix(String path, int backlog) throws IOException {
+        bindUnix(path, backlog, -1);
+    }
 
     public void connect(String host, int port) throws IOException {
         connect(InetAddress.getByName(host), port);
@@ -54,4 +80,27 @@ public abstract class Socket implements Closeable {
     public static Socket createServerSocket() throws IOException {
         return NativeLibrary.IS_SUPPORTED ? new NativeSocket() : new JavaServerSocket();
     }
+
+    public static Socket createUnixSocket() throws IOException {
+        if (!NativeLibrary.IS_SUPPORTED) {
+            throw new IOException("Unix domain sockets require native library");
+        }
+        return new NativeSocket(NativeSocket.unixSocket0());
+    }
+
+    // UDP socket; bind() does not listen and the backlog is ignored
+    public static Socket createDatagramSocket() throws IOException {
+        if (!NativeLibrary.IS_SUPPORTED) {
+            throw new IOException("Datagram sockets require native library");
+        }
+        return new NativeSocket(NativeSocket.datagramSocket0());
+    }
+
+    public static boolean isUnixAddress(String host) {
+        return host.startsWith(UNIX_PREFIX);
+    }
+
+    public static String unixPath(String host) {
+        return host.substring(UNIX_PREFIX.length());
+    }
 }
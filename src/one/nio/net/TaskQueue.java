@@ -0,0 +1,45 @@
+package one.nio.net;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+// Unbounded lock-free queue with many producers and a single consumer (the selecting thread).
+// Producers swap the tail and then link the previous node, so a node may briefly be invisible
+// to the consumer; the producer that completes the link is responsible for waking it up.
+final class TaskQueue {
+    private static final AtomicReferenceFieldUpdater<TaskQueue, Node> tailUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(TaskQueue.class, Node.class, "tail");
+
+    private Node head;
+    private volatile Node tail;
+
+    TaskQueue() {
+        this.head = this.tail = new Node(null);
+    }
+
+    void offer(Runnable task) {
+        Node node = new Node(task);
+        Node prev = tailUpdater.getAndSet(this, node);
+        prev.next = node;
+    }
+
+    // Called only by the consumer thread
+    Runnable poll() {
+        Node next = head.next;
+        if (next == null) {
+            return null;
+        }
+        Runnable task = next.task;
+        next.task = null;
+        head = next;
+        return task;
+    }
+
+    static final class Node {
+        Runnable task;
+        volatile Node next;
+
+        Node(Runnable task) {
+            this.task = task;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package one.nio.net;
+
+import java.util.Arrays;
+
+// Hashed wheel of session timeouts owned by a Selector.
+// Activity does not touch the wheel: a session is checked when its bucket comes due
+// and is re-inserted according to its current lastAccessTime.
+final class TimerWheel {
+    static final int TICK = 100;
+    static final int WHEEL_SIZE = 1024;
+
+    private final Session[] buckets = new Session[WHEEL_SIZE];
+    private Session[] expiring = new Session[64];
+    private long currentTick;
+    private int size;
+
+    TimerWheel() {
+        this.currentTick = System.currentTimeMillis() / TICK;
+    }
+
+    // Milliseconds until the next tick, or -1 if there is nothing to wait for
+    synchronized int timeout(long now) {
+        if (size == 0) {
+            return -1;
+        }
+        long nextTickTime = (currentTick + 1) * TICK;
+        return now >= nextTickTime ? 0 : (int) (nextTickTime - now);
+    }
+
+    // Returns true if the wheel was empty, i.e. the selector may be blocked without a timeout
+    synchronized boolean add(Session session, long deadline) {
+        if (session.timerBucket >= 0) {
+            return false;
+        }
+
+        long tick = (deadline + TICK - 1) / TICK;
+        int bucket = (int) (tick > currentTick ? tick : currentTick + 1) & (WHEEL_SIZE - 1);
+        Session head = buckets[bucket];
+        session.timerBucket = bucket;
+        session.timerPrev = null;
+        session.timerNext = head;
+        if (head != null) {
+            head.timerPrev = session;
+        }
+        buckets[bucket] = session;
+        return size++ == 0;
+    }
+
+    synchronized void remove(Session session) {
+        int bucket = session.timerBucket;
+        if (bucket < 0) {
+            return;
+        }
+
+        Session prev = session.timerPrev;
+        Session next = session.timerNext;
+        if (prev == null) {
+            buckets[bucket] = next;
+        } else {
+            prev.timerNext = next;
+        }
+        if (next != null) {
+            next.timerPrev = prev;
+        }
+        session.timerBucket = -1;
+        session.timerPrev = null;
+        session.timerNext = null;
+        size--;
+    }
+
+    // Called by the selecting thread; returns the number of sessions timed out
+    int expire(long now) {
+        long tick = now / TICK;
+        if (tick <= currentTick) {
+            return 0;
+        }
+
+        int count = collect(tick);
+        int expired = 0;
+
+        Session[] expiring = this.expiring;
+        for (int i = 0; i < count; i++) {
+            Session session = expiring[i];
+            expiring[i] = null;
+            if (session.checkTimeout(now)) {
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    // Detaches due buckets under the lock; sessions are checked outside of it,
+    // since timing out a session takes the session lock
+    private synchronized int collect(long tick) {
+        int count = 0;
+        long lastTick = Math.min(tick, currentTick + WHEEL_SIZE);
+        while (currentTick < lastTick) {
+            int bucket = (int) ++currentTick & (WHEEL_SIZE - 1);
+            for (Session session = buckets[bucket]; session != null; ) {
+                Session next = session.timerNext;
+                session.timerBucket = -1;
+                session.timerPrev = null;
+                session.timerNext = null;
+                if (count == expiring.length) {
+                    expiring = Arrays.copyOf(expiring, count * 2);
+                }
+                expiring[count++] = session;
+                size--;
+                session = next;
+            }
+            buckets[bucket] = null;
+        }
+        if (tick > currentTick) {
+            currentTick = tick;
+        }
+        return count;
+    }
+}
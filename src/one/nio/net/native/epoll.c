@@ -1,4 +1,7 @@
 #include <sys/epoll.h>
+#include <sys/eventfd.h>
+#include <stdint.h>
+#include <unistd.h>
 #include <jni.h>
 
 
@@ -8,8 +11,8 @@ Java_one_nio_net_NativeSelector_epollCreate(JNIEnv* env, jclass cls) {
 }
 
 JNIEXPORT jint JNICALL
-Java_one_nio_net_NativeSelector_epollWait(JNIEnv* env, jclass cls, jint epfd, jlong addr, jint count) {
-    return epoll_wait(epfd, (struct epoll_event*)(intptr_t)addr, count, -1);
+Java_one_nio_net_NativeSelector_epollWait(JNIEnv* env, jclass cls, jint epfd, jlong addr, jint count, jint timeout) {
+    return epoll_wait(epfd, (struct epoll_event*)(intptr_t)addr, count, timeout);
 }
 
 JNIEXPORT void JNICALL
@@ -20,9 +23,31 @@ Java_one_nio_net_NativeSelector_epollCtl(JNIEnv* env, jclass cls, jint epfd, jin
     epoll_ctl(epfd, op, fd, &ev);
 }
 
+JNIEXPORT jint JNICALL
+Java_one_nio_net_NativeSelector_eventfdCreate(JNIEnv* env, jclass cls) {
+    return eventfd(0, EFD_NONBLOCK | EFD_CLOEXEC);
+}
+
+JNIEXPORT void JNICALL
+Java_one_nio_net_NativeSelector_eventfdWrite(JNIEnv* env, jclass cls, jint fd) {
+    uint64_t value = 1;
+    if (write(fd, &value, sizeof(value)) < 0) {
+        // Counter overflow means a wakeup is already pending
+    }
+}
+
+JNIEXPORT void JNICALL
+Java_one_nio_net_NativeSelector_eventfdRead(JNIEnv* env, jclass cls, jint fd) {
+    uint64_t value;
+    if (read(fd, &value, sizeof(value)) < 0) {
+        // Nothing to consume
+    }
+}
+
 JNIEXPORT void JNICALL
-Java_one_nio_net_NativeSelector_epollClose(JNIEnv* env, jclass cls, jint epfd) {
+Java_one_nio_net_NativeSelector_epollClose(JNIEnv* env, jclass cls, jint epfd, jint wakeupfd) {
     // Wake up any pending epoll_wait by registring ready-to-write event on stdout
     Java_one_nio_net_NativeSelector_epollCtl(env, cls, epfd, EPOLL_CTL_ADD, 1, -1, EPOLLOUT);
     close(epfd);
+    close(wakeupfd);
 }
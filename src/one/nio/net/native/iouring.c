@@ -0,0 +1,347 @@
+#include <sys/eventfd.h>
+#include <sys/mman.h>
+#include <sys/syscall.h>
+#include <linux/io_uring.h>
+#include <errno.h>
+#include <poll.h>
+#include <pthread.h>
+#include <stdint.h>
+#include <stdlib.h>
+#include <string.h>
+#include <unistd.h>
+#include <jni.h>
+
+#ifndef IORING_FEAT_RSRC_TAGS
+#define IORING_FEAT_RSRC_TAGS   (1U << 10)
+#endif
+#ifndef IORING_FEAT_EXT_ARG
+#define IORING_FEAT_EXT_ARG     (1U << 8)
+#define IORING_ENTER_EXT_ARG    (1U << 3)
+struct io_uring_getevents_arg {
+    __u64 sigmask;
+    __u32 sigmask_sz;
+    __u32 pad;
+    __u64 ts;
+};
+#endif
+#ifndef IORING_POLL_UPDATE_EVENTS
+#define IORING_POLL_UPDATE_EVENTS   (1U << 1)
+#endif
+
+#define CONTROL_USER_DATA (-1LL)
+#define WAKEUP_USER_DATA  (-2LL)
+
+
+struct ring {
+    int fd;
+    unsigned sq_mask;
+    unsigned sq_entries;
+    unsigned* sq_head;
+    unsigned* sq_tail;
+    unsigned* sq_array;
+    struct io_uring_sqe* sqes;
+    unsigned cq_mask;
+    unsigned* cq_head;
+    unsigned* cq_tail;
+    struct io_uring_cqe* cqes;
+    void* sq_ptr;
+    size_t sq_size;
+    void* cq_ptr;
+    size_t cq_size;
+    size_t sqes_size;
+    int wake_fd;
+};
+
+static int io_uring_setup(unsigned entries, struct io_uring_params* p) {
+    return (int) syscall(__NR_io_uring_setup, entries, p);
+}
+
+static int io_uring_enter(int fd, unsigned to_submit, unsigned min_complete, unsigned flags) {
+    return (int) syscall(__NR_io_uring_enter, fd, to_submit, min_complete, flags, NULL, 0);
+}
+
+static int io_uring_wait(int fd, unsigned to_submit, unsigned min_complete, int timeout) {
+    struct __kernel_timespec ts;
+    struct io_uring_getevents_arg arg;
+
+    if (timeout < 0 || min_complete == 0) {
+        return io_uring_enter(fd, to_submit, min_complete, IORING_ENTER_GETEVENTS);
+    }
+
+    ts.tv_sec = timeout / 1000;
+    ts.tv_nsec = (timeout % 1000) * 1000000LL;
+    memset(&arg, 0, sizeof(arg));
+    arg.ts = (__u64)(intptr_t) &ts;
+    return (int) syscall(__NR_io_uring_enter, fd, to_submit, min_complete,
+                         IORING_ENTER_GETEVENTS | IORING_ENTER_EXT_ARG, &arg, sizeof(arg));
+}
+
+static void ring_free(struct ring* r) {
+    if (r->sqes != NULL && r->sqes != MAP_FAILED) munmap(r->sqes, r->sqes_size);
+    if (r->cq_ptr != NULL && r->cq_ptr != MAP_FAILED && r->cq_ptr != r->sq_ptr) munmap(r->cq_ptr, r->cq_size);
+    if (r->sq_ptr != NULL && r->sq_ptr != MAP_FAILED) munmap(r->sq_ptr, r->sq_size);
+    if (r->wake_fd > 0) close(r->wake_fd);
+    close(r->fd);
+    free(r);
+}
+
+static struct ring* ring_create(unsigned entries, unsigned required_features) {
+    struct io_uring_params p;
+    struct ring* r;
+
+    memset(&p, 0, sizeof(p));
+    int fd = io_uring_setup(entries, &p);
+    if (fd < 0) {
+        return NULL;
+    }
+
+    r = (struct ring*) calloc(1, sizeof(struct ring));
+    if (r == NULL) {
+        close(fd);
+        return NULL;
+    }
+    r->fd = fd;
+
+    if ((p.features & required_features) != required_features) {
+        ring_free(r);
+        return NULL;
+    }
+
+    r->sq_size = p.sq_off.array + p.sq_entries * sizeof(unsigned);
+    r->cq_size = p.cq_off.cqes + p.cq_entries * sizeof(struct io_uring_cqe);
+    if (p.features & IORING_FEAT_SINGLE_MMAP) {
+        if (r->cq_size > r->sq_size) r->sq_size = r->cq_size;
+        r->cq_size = r->sq_size;
+    }
+
+    r->sq_ptr = mmap(NULL, r->sq_size, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE, fd, IORING_OFF_SQ_RING);
+    if (r->sq_ptr == MAP_FAILED) {
+        ring_free(r);
+        return NULL;
+    }
+
+    if (p.features & IORING_FEAT_SINGLE_MMAP) {
+        r->cq_ptr = r->sq_ptr;
+    } else {
+        r->cq_ptr = mmap(NULL, r->cq_size, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE, fd, IORING_OFF_CQ_RING);
+        if (r->cq_ptr == MAP_FAILED) {
+            ring_free(r);
+            return NULL;
+        }
+    }
+
+    r->sqes_size = p.sq_entries * sizeof(struct io_uring_sqe);
+    r->sqes = (struct io_uring_sqe*) mmap(NULL, r->sqes_size, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE, fd, IORING_OFF_SQES);
+    if (r->sqes == MAP_FAILED) {
+        ring_free(r);
+        return NULL;
+    }
+
+    r->sq_head = (unsigned*) ((char*) r->sq_ptr + p.sq_off.head);
+    r->sq_tail = (unsigned*) ((char*) r->sq_ptr + p.sq_off.tail);
+    r->sq_mask = *(unsigned*) ((char*) r->sq_ptr + p.sq_off.ring_mask);
+    r->sq_entries = p.sq_entries;
+    r->sq_array = (unsigned*) ((char*) r->sq_ptr + p.sq_off.array);
+
+    r->cq_head = (unsigned*) ((char*) r->cq_ptr + p.cq_off.head);
+    r->cq_tail = (unsigned*) ((char*) r->cq_ptr + p.cq_off.tail);
+    r->cq_mask = *(unsigned*) ((char*) r->cq_ptr + p.cq_off.ring_mask);
+    r->cqes = (struct io_uring_cqe*) ((char*) r->cq_ptr + p.cq_off.cqes);
+
+    return r;
+}
+
+struct create_request {
+    unsigned entries;
+    unsigned required_features;
+    int probe;
+    struct ring* result;
+};
+
+static void* ring_create_thread(void* arg) {
+    struct create_request* req = (struct create_request*) arg;
+    req->result = ring_create(req->entries, req->required_features);
+    if (req->probe && req->result != NULL) {
+        ring_free(req->result);
+    }
+    return NULL;
+}
+
+// io_uring_setup() attaches the ring to the calling thread, and the kernel signals every attached thread
+// with task work when the ring is destroyed; that would interrupt an unrelated blocking call of the
+// thread that happened to construct the selector. A short-lived thread leaves no such attachment behind.
+static struct ring* ring_create_detached(unsigned entries, unsigned required_features, int probe) {
+    struct create_request req = {entries, required_features, probe, NULL};
+    pthread_t thread;
+    if (pthread_create(&thread, NULL, ring_create_thread, &req) != 0) {
+        return NULL;
+    }
+    pthread_join(thread, NULL);
+    return req.result;
+}
+
+static inline unsigned sq_pending(struct ring* r) {
+    return *r->sq_tail - __atomic_load_n(r->sq_head, __ATOMIC_ACQUIRE);
+}
+
+// Called by the selecting thread only. Never enters the ring: a full queue is reported to the caller,
+// which keeps the request and submits the queue first
+static struct io_uring_sqe* sqe_get(struct ring* r) {
+    unsigned tail = *r->sq_tail;
+    if (tail - __atomic_load_n(r->sq_head, __ATOMIC_ACQUIRE) >= r->sq_entries) {
+        return NULL;
+    }
+
+    struct io_uring_sqe* sqe = &r->sqes[tail & r->sq_mask];
+    memset(sqe, 0, sizeof(*sqe));
+    return sqe;
+}
+
+static void sqe_put(struct ring* r) {
+    unsigned tail = *r->sq_tail;
+    r->sq_array[tail & r->sq_mask] = tail & r->sq_mask;
+    __atomic_store_n(r->sq_tail, tail + 1, __ATOMIC_RELEASE);
+}
+
+static inline struct ring* cast_ring(jlong ring) {
+    return (struct ring*)(intptr_t) ring;
+}
+
+
+JNIEXPORT jboolean JNICALL
+Java_one_nio_net_IoUringSelector_isSupported0(JNIEnv* env, jclass cls) {
+    // Readiness polling with POLL_UPDATE is available since Linux 5.13, same as IORING_FEAT_RSRC_TAGS
+    struct ring* r = ring_create_detached(2, IORING_FEAT_NODROP | IORING_FEAT_EXT_ARG | IORING_FEAT_RSRC_TAGS, 1);
+    return r != NULL ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT jlong JNICALL
+Java_one_nio_net_IoUringSelector_ringCreate(JNIEnv* env, jclass cls, jint entries) {
+    struct ring* r = ring_create_detached(entries, IORING_FEAT_NODROP, 0);
+    if (r != NULL && (r->wake_fd = eventfd(0, EFD_NONBLOCK | EFD_CLOEXEC)) < 0) {
+        ring_free(r);
+        r = NULL;
+    }
+    if (r == NULL) {
+        jclass exception = (*env)->FindClass(env, "java/io/IOException");
+        (*env)->ThrowNew(env, exception, "Cannot create io_uring");
+    }
+    return (jlong)(intptr_t) r;
+}
+
+JNIEXPORT void JNICALL
+Java_one_nio_net_IoUringSelector_ringClose(JNIEnv* env, jclass cls, jlong ring) {
+    ring_free(cast_ring(ring));
+}
+
+JNIEXPORT jboolean JNICALL
+Java_one_nio_net_IoUringSelector_pollAdd(JNIEnv* env, jclass cls, jlong ring, jint fd, jlong userData, jint events) {
+    struct ring* r = cast_ring(ring);
+    struct io_uring_sqe* sqe = sqe_get(r);
+    if (sqe == NULL) {
+        return JNI_FALSE;
+    }
+    sqe->opcode = IORING_OP_POLL_ADD;
+    sqe->fd = fd;
+    sqe->poll32_events = (unsigned) events;
+    sqe->user_data = (unsigned long long) userData;
+    sqe_put(r);
+    return JNI_TRUE;
+}
+
+JNIEXPORT jboolean JNICALL
+Java_one_nio_net_IoUringSelector_pollUpdate(JNIEnv* env, jclass cls, jlong ring, jlong userData, jint events) {
+    struct ring* r = cast_ring(ring);
+    struct io_uring_sqe* sqe = sqe_get(r);
+    if (sqe == NULL) {
+        return JNI_FALSE;
+    }
+    sqe->opcode = IORING_OP_POLL_REMOVE;
+    sqe->fd = -1;
+    sqe->addr = (unsigned long long) userData;
+    sqe->len = IORING_POLL_UPDATE_EVENTS;
+    sqe->poll32_events = (unsigned) events;
+    sqe->user_data = CONTROL_USER_DATA;
+    sqe_put(r);
+    return JNI_TRUE;
+}
+
+JNIEXPORT jboolean JNICALL
+Java_one_nio_net_IoUringSelector_pollRemove(JNIEnv* env, jclass cls, jlong ring, jlong userData) {
+    struct ring* r = cast_ring(ring);
+    struct io_uring_sqe* sqe = sqe_get(r);
+    if (sqe == NULL) {
+        return JNI_FALSE;
+    }
+    sqe->opcode = IORING_OP_POLL_REMOVE;
+    sqe->fd = -1;
+    sqe->addr = (unsigned long long) userData;
+    sqe->user_data = CONTROL_USER_DATA;
+    sqe_put(r);
+    return JNI_TRUE;
+}
+
+// Called by the selecting thread: the completion of a poll is delivered as task work
+// to the thread that submitted it, which must not be a thread blocked elsewhere
+JNIEXPORT jboolean JNICALL
+Java_one_nio_net_IoUringSelector_armWakeup(JNIEnv* env, jclass cls, jlong ring) {
+    struct ring* r = cast_ring(ring);
+    struct io_uring_sqe* sqe = sqe_get(r);
+    if (sqe == NULL) {
+        return JNI_FALSE;
+    }
+    sqe->opcode = IORING_OP_POLL_ADD;
+    sqe->fd = r->wake_fd;
+    sqe->poll32_events = POLLIN;
+    sqe->user_data = WAKEUP_USER_DATA;
+    sqe_put(r);
+    return JNI_TRUE;
+}
+
+JNIEXPORT void JNICALL
+Java_one_nio_net_IoUringSelector_submit(JNIEnv* env, jclass cls, jlong ring) {
+    struct ring* r = cast_ring(ring);
+    io_uring_enter(r->fd, sq_pending(r), 0, 0);
+}
+
+// Resets the counter once the wakeup poll has completed, so that the next one waits again
+JNIEXPORT void JNICALL
+Java_one_nio_net_IoUringSelector_drainWakeup(JNIEnv* env, jclass cls, jlong ring) {
+    uint64_t value;
+    if (read(cast_ring(ring)->wake_fd, &value, sizeof(value)) < 0) {
+        // Nothing to drain
+    }
+}
+
+JNIEXPORT void JNICALL
+Java_one_nio_net_IoUringSelector_wakeup(JNIEnv* env, jclass cls, jlong ring) {
+    uint64_t value = 1;
+    if (write(cast_ring(ring)->wake_fd, &value, sizeof(value)) < 0) {
+        // The counter is already non-zero
+    }
+}
+
+JNIEXPORT jint JNICALL
+Java_one_nio_net_IoUringSelector_ringWait(JNIEnv* env, jclass cls, jlong ring, jlong buf, jint max, jint timeout) {
+    struct ring* r = cast_ring(ring);
+    struct io_uring_cqe* dst = (struct io_uring_cqe*)(intptr_t) buf;
+    unsigned head = *r->cq_head;
+    unsigned tail = __atomic_load_n(r->cq_tail, __ATOMIC_ACQUIRE);
+    unsigned to_submit = sq_pending(r);
+    int count = 0;
+
+    // Submit and wait in one syscall; no syscall at all if completions are already there
+    if (head == tail || to_submit > 0) {
+        if (io_uring_wait(r->fd, to_submit, head == tail ? 1 : 0, timeout) < 0 && errno != EINTR && errno != ETIME) {
+            return -1;
+        }
+        tail = __atomic_load_n(r->cq_tail, __ATOMIC_ACQUIRE);
+    }
+
+    for (; head != tail && count < max; head++, count++) {
+        dst[count] = r->cqes[head & r->cq_mask];
+    }
+
+    __atomic_store_n(r->cq_head, head, __ATOMIC_RELEASE);
+    return count;
+}
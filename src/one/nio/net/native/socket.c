@@ -2,20 +2,32 @@
 #include <sys/resource.h>
 #include <sys/sendfile.h>
 #include <sys/socket.h>
+#include <sys/stat.h>
+#include <sys/un.h>
 #include <netinet/in.h>
 #include <netinet/tcp.h>
 #include <errno.h>
 #include <fcntl.h>
+#include <limits.h>
 #include <pthread.h>
 #include <signal.h>
+#include <stddef.h>
 #include <stdlib.h>
 #include <string.h>
+#include <unistd.h>
 #include <jni.h>
 
 
 #define MAX_STACK_BUF 65536
+#define MAX_IOV 256
+#define MAX_DATAGRAM_BATCH 256
+#define DATAGRAM_ADDRESS_SIZE 20
 #define SIG_WAKEUP (__SIGRTMAX - 2)
 
+#ifndef SO_INCOMING_CPU
+#define SO_INCOMING_CPU 49
+#endif
+
 static jfieldID f_fd;
 static pthread_t* fd_table;
 static int use_IPv6;
@@ -85,37 +97,83 @@ static int check_IPv6(JNIEnv* env) {
     return 0;
 }
 
-static int sockaddr_from_java(JNIEnv* env, jbyteArray address, jint port, struct sockaddr_storage* sa) {
+static int sockaddr_from_bytes(const jbyte* address, int length, jint port, struct sockaddr_storage* sa) {
     if (use_IPv6) {
         struct sockaddr_in6* sin = (struct sockaddr_in6*)sa;
         sin->sin6_family = AF_INET6;
         sin->sin6_port = htons(port);
         sin->sin6_flowinfo = 0;
         sin->sin6_scope_id = 0;
-        if ((*env)->GetArrayLength(env, address) == 4) {
+        if (length == 4) {
             ((int*)&sin->sin6_addr)[0] = 0;
             ((int*)&sin->sin6_addr)[1] = 0;
             ((int*)&sin->sin6_addr)[2] = 0xffff0000;
-            (*env)->GetByteArrayRegion(env, address, 0, 4, (jbyte*)&sin->sin6_addr + 12);
+            memcpy((jbyte*)&sin->sin6_addr + 12, address, 4);
         } else {
-            (*env)->GetByteArrayRegion(env, address, 0, 16, (jbyte*)&sin->sin6_addr);
+            memcpy(&sin->sin6_addr, address, 16);
         }
         return sizeof(struct sockaddr_in6);
     } else {
         struct sockaddr_in* sin = (struct sockaddr_in*)sa;
         sin->sin_family = AF_INET;
         sin->sin_port = htons(port);
-        (*env)->GetByteArrayRegion(env, address, 0, 4, (jbyte*)&sin->sin_addr);
+        memcpy(&sin->sin_addr, address, 4);
         return sizeof(struct sockaddr_in);
     }
 }
 
+static int sockaddr_from_java(JNIEnv* env, jbyteArray address, jint port, struct sockaddr_storage* sa) {
+    jbyte bytes[16];
+    int length = (*env)->GetArrayLength(env, address) == 4 ? 4 : 16;
+    (*env)->GetByteArrayRegion(env, address, 0, length, bytes);
+    return sockaddr_from_bytes(bytes, length, port, sa);
+}
+
+static int sockaddr_un_from_java(JNIEnv* env, jstring path, struct sockaddr_un* sun) {
+    int length = (*env)->GetStringUTFLength(env, path);
+    if (length >= sizeof(sun->sun_path)) {
+        throw_by_name(env, "java/io/IOException", "Unix socket path too long");
+        return -1;
+    }
+    sun->sun_family = AF_UNIX;
+    (*env)->GetStringUTFRegion(env, path, 0, (*env)->GetStringLength(env, path), sun->sun_path);
+    sun->sun_path[length] = 0;
+    return offsetof(struct sockaddr_un, sun_path) + length + 1;
+}
+
 static int sockaddr_to_java(JNIEnv* env, jbyteArray buffer, struct sockaddr_storage* sa) {
+    if (sa->ss_family != AF_INET && sa->ss_family != AF_INET6) {
+        return 0;
+    }
     int len = sa->ss_family == AF_INET6 ? 24 : 8;
     (*env)->SetByteArrayRegion(env, buffer, 0, len, (jbyte*)sa);
     return len;
 }
 
+// Datagram addresses are exchanged with Java as 2 bytes of port, 1 byte of address length,
+// 1 byte of padding and 16 bytes of address; zero length means no address
+static void datagram_address_to_java(struct sockaddr_storage* sa, jbyte* buf) {
+    memset(buf, 0, DATAGRAM_ADDRESS_SIZE);
+    if (sa->ss_family == AF_INET6) {
+        struct sockaddr_in6* sin = (struct sockaddr_in6*)sa;
+        memcpy(buf, &sin->sin6_port, 2);
+        buf[2] = 16;
+        memcpy(buf + 4, &sin->sin6_addr, 16);
+    } else if (sa->ss_family == AF_INET) {
+        struct sockaddr_in* sin = (struct sockaddr_in*)sa;
+        memcpy(buf, &sin->sin_port, 2);
+        buf[2] = 4;
+        memcpy(buf + 4, &sin->sin_addr, 4);
+    }
+}
+
+static int datagram_address_from_java(const jbyte* buf, struct sockaddr_storage* sa) {
+    if (buf[2] == 0) {
+        return 0;
+    }
+    return sockaddr_from_bytes(buf + 4, buf[2], (buf[0] & 0xff) << 8 | (buf[1] & 0xff), sa);
+}
+
 static void wakeup_handler(int sig) {
     // Empty handler
 }
@@ -176,6 +234,24 @@ Java_one_nio_net_NativeSocket_socket0(JNIEnv* env, jclass cls) {
     return result;
 }
 
+JNIEXPORT jint JNICALL
+Java_one_nio_net_NativeSocket_unixSocket0(JNIEnv* env, jclass cls) {
+    int result = socket(PF_UNIX, SOCK_STREAM, 0);
+    if (result == -1) {
+        throw_exception(env);
+    }
+    return result;
+}
+
+JNIEXPORT jint JNICALL
+Java_one_nio_net_NativeSocket_datagramSocket0(JNIEnv* env, jclass cls) {
+    int result = socket(use_IPv6 ? PF_INET6 : PF_INET, SOCK_DGRAM, 0);
+    if (result == -1) {
+        throw_exception(env);
+    }
+    return result;
+}
+
 JNIEXPORT jint JNICALL
 Java_one_nio_net_NativeSocket_accept0(JNIEnv* env, jobject self) {
     int fd = (*env)->GetIntField(env, self, f_fd);
@@ -187,7 +263,7 @@ Java_one_nio_net_NativeSocket_accept0(JNIEnv* env, jobject self) {
         int result = accept(fd, NULL, NULL);
         end_blocking_call(fd_lock);
 
-        if (result == -1) {
+        if (result == -1 && (errno != EWOULDBLOCK || (fcntl(fd, F_GETFL) & O_NONBLOCK) == 0)) {
             throw_exception(env);
         }
         return result;
@@ -205,6 +281,17 @@ Java_one_nio_net_NativeSocket_close(JNIEnv* env, jobject self) {
     }
 }
 
+// Closes the descriptor without shutting the socket down, since other processes may still hold it
+JNIEXPORT void JNICALL
+Java_one_nio_net_NativeSocket_detach(JNIEnv* env, jobject self) {
+    int fd = (*env)->GetIntField(env, self, f_fd);
+    if (fd != -1) {
+        (*env)->SetIntField(env, self, f_fd, -1);
+        wakeup_blocking_call(fd);
+        close(fd);
+    }
+}
+
 JNIEXPORT void JNICALL
 Java_one_nio_net_NativeSocket_connect0(JNIEnv* env, jobject self, jbyteArray address, jint port) {
     int fd = (*env)->GetIntField(env, self, f_fd);
@@ -219,6 +306,40 @@ Java_one_nio_net_NativeSocket_connect0(JNIEnv* env, jobject self, jbyteArray add
     }
 }
 
+JNIEXPORT jboolean JNICALL
+Java_one_nio_net_NativeSocket_beginConnect0(JNIEnv* env, jobject self, jbyteArray address, jint port) {
+    int fd = (*env)->GetIntField(env, self, f_fd);
+    if (fd == -1) {
+        throw_socket_closed(env);
+    } else {
+        struct sockaddr_storage sa;
+        int len = sockaddr_from_java(env, address, port, &sa);
+        if (connect(fd, (struct sockaddr*)&sa, len) == 0) {
+            return JNI_TRUE;
+        } else if (errno != EINPROGRESS) {
+            throw_exception(env);
+        }
+    }
+    return JNI_FALSE;
+}
+
+JNIEXPORT void JNICALL
+Java_one_nio_net_NativeSocket_finishConnect(JNIEnv* env, jobject self) {
+    int fd = (*env)->GetIntField(env, self, f_fd);
+    if (fd == -1) {
+        throw_socket_closed(env);
+    } else {
+        int error = 0;
+        socklen_t len = sizeof(error);
+        if (getsockopt(fd, SOL_SOCKET, SO_ERROR, &error, &len) != 0) {
+            throw_exception(env);
+        } else if (error != 0) {
+            errno = error;
+            throw_exception(env);
+        }
+    }
+}
+
 JNIEXPORT void JNICALL
 Java_one_nio_net_NativeSocket_bind0(JNIEnv* env, jobject self, jbyteArray address, jint port, jint backlog) {
     int fd = (*env)->GetIntField(env, self, f_fd);
@@ -226,13 +347,65 @@ Java_one_nio_net_NativeSocket_bind0(JNIEnv* env, jobject self, jbyteArray addres
         throw_socket_closed(env);
     } else {
         struct sockaddr_storage sa;
+        int type = SOCK_STREAM;
+        socklen_t type_len = sizeof(type);
         int len = sockaddr_from_java(env, address, port, &sa);
-        if (bind(fd, (struct sockaddr*)&sa, len) != 0 || listen(fd, backlog) != 0) {
+        getsockopt(fd, SOL_SOCKET, SO_TYPE, &type, &type_len);
+        if (bind(fd, (struct sockaddr*)&sa, len) != 0 || (type == SOCK_STREAM && listen(fd, backlog) != 0)) {
             throw_exception(env);
         }
     }
 }
 
+JNIEXPORT void JNICALL
+Java_one_nio_net_NativeSocket_connectUnix(JNIEnv* env, jobject self, jstring path) {
+    int fd = (*env)->GetIntField(env, self, f_fd);
+    if (fd == -1) {
+        throw_socket_closed(env);
+    } else {
+        struct sockaddr_un sun;
+        int len = sockaddr_un_from_java(env, path, &sun);
+        if (len > 0 && connect(fd, (struct sockaddr*)&sun, len) != 0) {
+            throw_exception(env);
+        }
+    }
+}
+
+JNIEXPORT void JNICALL
+Java_one_nio_net_NativeSocket_bindUnix(JNIEnv* env, jobject self, jstring path, jint backlog, jint mode) {
+    int fd = (*env)->GetIntField(env, self, f_fd);
+    if (fd == -1) {
+        throw_socket_closed(env);
+    } else {
+        struct sockaddr_un sun;
+        struct stat st;
+        int len = sockaddr_un_from_java(env, path, &sun);
+        if (len > 0) {
+            // A socket file left by a previous process would make bind fail with EADDRINUSE.
+            // Only a file nobody listens on is removed, a live server keeps its path
+            if (stat(sun.sun_path, &st) == 0 && S_ISSOCK(st.st_mode)) {
+                int probe = socket(PF_UNIX, SOCK_STREAM | SOCK_NONBLOCK | SOCK_CLOEXEC, 0);
+                int refused = probe != -1 && connect(probe, (struct sockaddr*)&sun, len) != 0 && errno == ECONNREFUSED;
+                if (probe != -1) {
+                    close(probe);
+                }
+                if (!refused) {
+                    errno = EADDRINUSE;
+                    throw_exception(env);
+                    return;
+                }
+                unlink(sun.sun_path);
+            }
+            // Nobody can connect before listen(), so restricting the mode in between leaves no window
+            if (bind(fd, (struct sockaddr*)&sun, len) != 0 ||
+                (mode >= 0 && chmod(sun.sun_path, (mode_t)mode) != 0) ||
+                listen(fd, backlog) != 0) {
+                throw_exception(env);
+            }
+        }
+    }
+}
+
 JNIEXPORT jint JNICALL
 Java_one_nio_net_NativeSocket_writeRaw(JNIEnv* env, jobject self, jlong buf, jint count, jint flags) {
     int fd = (*env)->GetIntField(env, self, f_fd);
@@ -299,6 +472,91 @@ Java_one_nio_net_NativeSocket_writeFully(JNIEnv* env, jobject self, jbyteArray d
     }
 }
 
+// The arrays are pinned only around a single sendmsg() with no JNI calls in between.
+// Sessions use non-blocking sockets, so the garbage collector is not held up by a waiting send
+JNIEXPORT jlong JNICALL
+Java_one_nio_net_NativeSocket_writev(JNIEnv* env, jobject self, jobjectArray data, jintArray offsets, jintArray counts, jint start, jint count, jint flags) {
+    int fd = (*env)->GetIntField(env, self, f_fd);
+    jbyteArray arrays[MAX_IOV];
+    void* pinned[MAX_IOV];
+    struct iovec iov[MAX_IOV];
+    jint offs[MAX_IOV];
+    jint lens[MAX_IOV];
+
+    if (fd == -1) {
+        throw_socket_closed(env);
+        return 0;
+    }
+
+    int i, n = count < MAX_IOV ? count : MAX_IOV;
+    (*env)->GetIntArrayRegion(env, offsets, start, n, offs);
+    (*env)->GetIntArrayRegion(env, counts, start, n, lens);
+    if ((*env)->ExceptionCheck(env)) {
+        return 0;
+    }
+
+    for (i = 0; i < n; i++) {
+        arrays[i] = (jbyteArray) (*env)->GetObjectArrayElement(env, data, start + i);
+        if (arrays[i] == NULL || offs[i] < 0 || lens[i] < 0 || offs[i] > (*env)->GetArrayLength(env, arrays[i]) - lens[i]) {
+            n = i + (arrays[i] != NULL);
+            if (!(*env)->ExceptionCheck(env)) {
+                throw_by_name(env, "java/lang/ArrayIndexOutOfBoundsException", NULL);
+            }
+            break;
+        }
+    }
+
+    int pinnedCount = 0;
+    ssize_t result = 0;
+    int error = 0;
+    if (!(*env)->ExceptionCheck(env)) {
+        for (; pinnedCount < n; pinnedCount++) {
+            pinned[pinnedCount] = (*env)->GetPrimitiveArrayCritical(env, arrays[pinnedCount], NULL);
+            if (pinned[pinnedCount] == NULL) {
+                break;
+            }
+            iov[pinnedCount].iov_base = (char*) pinned[pinnedCount] + offs[pinnedCount];
+            iov[pinnedCount].iov_len = lens[pinnedCount];
+        }
+
+        if (pinnedCount == n) {
+            struct msghdr msg;
+            memset(&msg, 0, sizeof(msg));
+            msg.msg_iov = iov;
+            msg.msg_iovlen = n;
+
+            // MSG_MORE is kept only while some of the given buffers are left for the next call
+            if (n == count) {
+                flags &= ~MSG_MORE;
+            }
+            result = sendmsg(fd, &msg, flags | MSG_NOSIGNAL);
+            error = errno;
+        }
+
+        for (i = pinnedCount - 1; i >= 0; i--) {
+            (*env)->ReleasePrimitiveArrayCritical(env, arrays[i], pinned[i], JNI_ABORT);
+        }
+    }
+
+    for (i = 0; i < n; i++) {
+        (*env)->DeleteLocalRef(env, arrays[i]);
+    }
+    if (pinnedCount < n) {
+        // An exception is pending
+        return 0;
+    }
+
+    if (result > 0) {
+        return result;
+    } else if (result == 0) {
+        if (n > 0) throw_socket_closed(env);
+    } else if (error != EWOULDBLOCK || (fcntl(fd, F_GETFL) & O_NONBLOCK) == 0) {
+        errno = error;
+        throw_exception(env);
+    }
+    return 0;
+}
+
 JNIEXPORT jint JNICALL
 Java_one_nio_net_NativeSocket_readRaw(JNIEnv* env, jobject self, jlong buf, jint count, jint flags) {
     int fd = (*env)->GetIntField(env, self, f_fd);
@@ -327,8 +585,20 @@ Java_one_nio_net_NativeSocket_read(JNIEnv* env, jobject self, jbyteArray data, j
     } else {
         int result = recv(fd, buf, count <= MAX_STACK_BUF ? count : MAX_STACK_BUF, 0);
         if (result > 0) {
-            (*env)->SetByteArrayRegion(env, data, offset, result, buf);
-            return result;
+            // Continue without blocking while the stack buffer fills up,
+            // so that a short read means there is no more data available
+            int total = 0;
+            do {
+                (*env)->SetByteArrayRegion(env, data, offset, result, buf);
+                total += result;
+                offset += result;
+                count -= result;
+                if (result < MAX_STACK_BUF || count == 0) {
+                    break;
+                }
+                result = recv(fd, buf, count <= MAX_STACK_BUF ? count : MAX_STACK_BUF, MSG_DONTWAIT);
+            } while (result > 0);
+            return total;
         } else if (result == 0) {
             throw_socket_closed(env);
         } else if (errno != EWOULDBLOCK || (fcntl(fd, F_GETFL) & O_NONBLOCK) == 0) {
@@ -363,6 +633,95 @@ Java_one_nio_net_NativeSocket_readFully(JNIEnv* env, jobject self, jbyteArray da
     }
 }
 
+JNIEXPORT jint JNICALL
+Java_one_nio_net_NativeSocket_recvmmsg0(JNIEnv* env, jobject self, jlong buf, jint size, jint count,
+                                        jintArray lengths, jbyteArray addresses) {
+    int fd = (*env)->GetIntField(env, self, f_fd);
+    struct mmsghdr msgs[MAX_DATAGRAM_BATCH];
+    struct iovec iov[MAX_DATAGRAM_BATCH];
+    struct sockaddr_storage sa[MAX_DATAGRAM_BATCH];
+    jint lens[MAX_DATAGRAM_BATCH];
+    jbyte addrs[MAX_DATAGRAM_BATCH * DATAGRAM_ADDRESS_SIZE];
+    int i;
+
+    if (fd == -1) {
+        throw_socket_closed(env);
+        return 0;
+    }
+
+    if (count > MAX_DATAGRAM_BATCH) {
+        count = MAX_DATAGRAM_BATCH;
+    }
+
+    memset(msgs, 0, count * sizeof(struct mmsghdr));
+    for (i = 0; i < count; i++) {
+        iov[i].iov_base = (void*)(intptr_t)(buf + (jlong)i * size);
+        iov[i].iov_len = size;
+        msgs[i].msg_hdr.msg_name = &sa[i];
+        msgs[i].msg_hdr.msg_namelen = sizeof(sa[i]);
+        msgs[i].msg_hdr.msg_iov = &iov[i];
+        msgs[i].msg_hdr.msg_iovlen = 1;
+    }
+
+    // A blocking call waits only for the first datagram
+    int result = recvmmsg(fd, msgs, count, MSG_WAITFORONE, NULL);
+    if (result > 0) {
+        for (i = 0; i < result; i++) {
+            lens[i] = msgs[i].msg_len;
+            datagram_address_to_java(&sa[i], addrs + i * DATAGRAM_ADDRESS_SIZE);
+        }
+        (*env)->SetIntArrayRegion(env, lengths, 0, result, lens);
+        (*env)->SetByteArrayRegion(env, addresses, 0, result * DATAGRAM_ADDRESS_SIZE, addrs);
+        return result;
+    } else if (result < 0 && (errno != EWOULDBLOCK || (fcntl(fd, F_GETFL) & O_NONBLOCK) == 0)) {
+        throw_exception(env);
+    }
+    return 0;
+}
+
+JNIEXPORT jint JNICALL
+Java_one_nio_net_NativeSocket_sendmmsg0(JNIEnv* env, jobject self, jlong buf, jint size, jint start, jint count,
+                                        jintArray lengths, jbyteArray addresses) {
+    int fd = (*env)->GetIntField(env, self, f_fd);
+    struct mmsghdr msgs[MAX_DATAGRAM_BATCH];
+    struct iovec iov[MAX_DATAGRAM_BATCH];
+    struct sockaddr_storage sa[MAX_DATAGRAM_BATCH];
+    jint lens[MAX_DATAGRAM_BATCH];
+    jbyte addrs[MAX_DATAGRAM_BATCH * DATAGRAM_ADDRESS_SIZE];
+    int i;
+
+    if (fd == -1) {
+        throw_socket_closed(env);
+        return 0;
+    }
+
+    if (count > MAX_DATAGRAM_BATCH) {
+        count = MAX_DATAGRAM_BATCH;
+    }
+
+    (*env)->GetIntArrayRegion(env, lengths, start, count, lens);
+    (*env)->GetByteArrayRegion(env, addresses, start * DATAGRAM_ADDRESS_SIZE, count * DATAGRAM_ADDRESS_SIZE, addrs);
+
+    memset(msgs, 0, count * sizeof(struct mmsghdr));
+    for (i = 0; i < count; i++) {
+        int namelen = datagram_address_from_java(addrs + i * DATAGRAM_ADDRESS_SIZE, &sa[i]);
+        iov[i].iov_base = (void*)(intptr_t)(buf + (jlong)(start + i) * size);
+        iov[i].iov_len = lens[i];
+        msgs[i].msg_hdr.msg_name = namelen > 0 ? &sa[i] : NULL;
+        msgs[i].msg_hdr.msg_namelen = namelen;
+        msgs[i].msg_hdr.msg_iov = &iov[i];
+        msgs[i].msg_hdr.msg_iovlen = 1;
+    }
+
+    int result = sendmmsg(fd, msgs, count, MSG_NOSIGNAL);
+    if (result >= 0) {
+        return result;
+    } else if (errno != EWOULDBLOCK || (fcntl(fd, F_GETFL) & O_NONBLOCK) == 0) {
+        throw_exception(env);
+    }
+    return 0;
+}
+
 JNIEXPORT jlong JNICALL
 Java_one_nio_net_NativeSocket_sendFile0(JNIEnv* env, jobject self, jint sourceFD, jlong offset, jlong count) {
     int fd = (*env)->GetIntField(env, self, f_fd);
@@ -404,6 +763,21 @@ Java_one_nio_net_NativeSocket_getpeername(JNIEnv* env, jobject self, jbyteArray
     return sockaddr_to_java(env, buffer, &sa);
 }
 
+JNIEXPORT jint JNICALL
+Java_one_nio_net_NativeSocket_getPeerUid(JNIEnv* env, jobject self) {
+    int fd = (*env)->GetIntField(env, self, f_fd);
+    struct ucred cred;
+    socklen_t len = sizeof(cred);
+    if (fd == -1) {
+        throw_socket_closed(env);
+    } else if (getsockopt(fd, SOL_SOCKET, SO_PEERCRED, &cred, &len) != 0) {
+        throw_exception(env);
+    } else {
+        return (jint)cred.uid;
+    }
+    return -1;
+}
+
 JNIEXPORT void JNICALL
 Java_one_nio_net_NativeSocket_setBlocking(JNIEnv* env, jobject self, jboolean blocking) {
     int fd = (*env)->GetIntField(env, self, f_fd);
@@ -448,6 +822,13 @@ Java_one_nio_net_NativeSocket_setReuseAddr(JNIEnv* env, jobject self, jboolean r
     setsockopt(fd, SOL_SOCKET, SO_REUSEADDR, &value, sizeof(value));
 }
 
+JNIEXPORT void JNICALL
+Java_one_nio_net_NativeSocket_setReusePort(JNIEnv* env, jobject self, jboolean reusePort) {
+    int fd = (*env)->GetIntField(env, self, f_fd);
+    int value = (int) reusePort;
+    setsockopt(fd, SOL_SOCKET, SO_REUSEPORT, &value, sizeof(value));
+}
+
 JNIEXPORT void JNICALL
 Java_one_nio_net_NativeSocket_setRecvBuffer(JNIEnv* env, jobject self, jint recvBuf) {
     int fd = (*env)->GetIntField(env, self, f_fd);
@@ -459,3 +840,92 @@ Java_one_nio_net_NativeSocket_setSendBuffer(JNIEnv* env, jobject self, jint send
     int fd = (*env)->GetIntField(env, self, f_fd);
     setsockopt(fd, SOL_SOCKET, SO_SNDBUF, &sendBuf, sizeof(sendBuf));
 }
+
+JNIEXPORT jint JNICALL
+Java_one_nio_net_NativeSocket_getIncomingCpu(JNIEnv* env, jobject self) {
+    int fd = (*env)->GetIntField(env, self, f_fd);
+    int cpu;
+    socklen_t len = sizeof(cpu);
+    return getsockopt(fd, SOL_SOCKET, SO_INCOMING_CPU, &cpu, &len) == 0 ? cpu : -1;
+}
+
+// A descriptor travels as SCM_RIGHTS ancillary data attached to a single byte
+JNIEXPORT void JNICALL
+Java_one_nio_net_NativeSocket_sendSocket0(JNIEnv* env, jobject self, jint target) {
+    int fd = (*env)->GetIntField(env, self, f_fd);
+    char data = 0;
+    struct iovec iov;
+    struct msghdr msg;
+    union {
+        struct cmsghdr hdr;
+        char buf[CMSG_SPACE(sizeof(int))];
+    } control;
+    struct cmsghdr* cmsg;
+
+    if (fd == -1 || target == -1) {
+        throw_socket_closed(env);
+        return;
+    }
+
+    iov.iov_base = &data;
+    iov.iov_len = 1;
+    memset(&msg, 0, sizeof(msg));
+    memset(&control, 0, sizeof(control));
+    msg.msg_iov = &iov;
+    msg.msg_iovlen = 1;
+    msg.msg_control = control.buf;
+    msg.msg_controllen = sizeof(control.buf);
+
+    cmsg = CMSG_FIRSTHDR(&msg);
+    cmsg->cmsg_level = SOL_SOCKET;
+    cmsg->cmsg_type = SCM_RIGHTS;
+    cmsg->cmsg_len = CMSG_LEN(sizeof(int));
+    memcpy(CMSG_DATA(cmsg), &target, sizeof(int));
+
+    if (sendmsg(fd, &msg, MSG_NOSIGNAL) != 1) {
+        throw_exception(env);
+    }
+}
+
+JNIEXPORT jint JNICALL
+Java_one_nio_net_NativeSocket_receiveSocket0(JNIEnv* env, jobject self) {
+    int fd = (*env)->GetIntField(env, self, f_fd);
+    char data;
+    struct iovec iov;
+    struct msghdr msg;
+    union {
+        struct cmsghdr hdr;
+        char buf[CMSG_SPACE(sizeof(int))];
+    } control;
+    struct cmsghdr* cmsg;
+    int result;
+
+    if (fd == -1) {
+        throw_socket_closed(env);
+        return -1;
+    }
+
+    iov.iov_base = &data;
+    iov.iov_len = 1;
+    memset(&msg, 0, sizeof(msg));
+    msg.msg_iov = &iov;
+    msg.msg_iovlen = 1;
+    msg.msg_control = control.buf;
+    msg.msg_controllen = sizeof(control.buf);
+
+    result = recvmsg(fd, &msg, MSG_CMSG_CLOEXEC);
+    if (result == 1) {
+        cmsg = CMSG_FIRSTHDR(&msg);
+        if (cmsg != NULL && cmsg->cmsg_level == SOL_SOCKET && cmsg->cmsg_type == SCM_RIGHTS &&
+            cmsg->cmsg_len == CMSG_LEN(sizeof(int))) {
+            memcpy(&result, CMSG_DATA(cmsg), sizeof(int));
+            return result;
+        }
+        throw_by_name(env, "java/io/IOException", "No descriptor received");
+    } else if (result == 0) {
+        throw_socket_closed(env);
+    } else {
+        throw_exception(env);
+    }
+    return -1;
+}
@@ -70,6 +70,23 @@ public final class Mem {
 
     public static native int posix_fadvise(int fd, long offset, long len, int advice);
 
+    public static final int MPOL_DEFAULT    = 0;
+    public static final int MPOL_PREFERRED  = 1;
+    public static final int MPOL_BIND       = 2;
+    public static final int MPOL_INTERLEAVE = 3;
+    public static final int MPOL_LOCAL      = 4;
+
+    public static final int MPOL_MF_STRICT   = 1;
+    public static final int MPOL_MF_MOVE     = 2;
+    public static final int MPOL_MF_MOVE_ALL = 4;
+
+    // nodemask has bit N set for NUMA node N
+    public static native int mbind(long addr, long len, int mode, long nodemask, int flags);
+    public static native int set_mempolicy(int mode, long nodemask);
+
+    // Stores the policy of the calling thread, with mode flags, into mode[0] and nodemask[0]
+    public static native int get_mempolicy(int[] mode, long[] nodemask);
+
     public static int posix_fadvise(FileDescriptor fd, long offset, long len, int advice) {
         return posix_fadvise(getFD(fd), offset, len, advice);
     }
@@ -1,12 +1,100 @@
 package one.nio.os;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.BitSet;
+
 public final class Proc {
     public static final boolean IS_SUPPORTED = NativeLibrary.IS_SUPPORTED;
 
+    private static final String NODE_DIR = "/sys/devices/system/node";
+
     public static native int gettid();
     public static native int getpid();
     public static native int getppid();
 
     public static native int sched_setaffinity(int pid, long mask);
     public static native long sched_getaffinity(int pid);
+
+    // Affinity masks of any size: bit N of word N / 64 corresponds to CPU N
+    private static native int sched_setaffinity0(int pid, long[] mask);
+    private static native long[] sched_getaffinity0(int pid);
+
+    public static int setAffinity(int pid, BitSet cpus) {
+        long[] mask = new long[(cpus.length() + 63) / 64];
+        for (int cpu = cpus.nextSetBit(0); cpu >= 0; cpu = cpus.nextSetBit(cpu + 1)) {
+            mask[cpu / 64] |= 1L << cpu;
+        }
+        return sched_setaffinity0(pid, mask);
+    }
+
+    public static BitSet getAffinity(int pid) {
+        BitSet cpus = new BitSet();
+        long[] mask = sched_getaffinity0(pid);
+        for (int i = 0; i < mask.length * 64; i++) {
+            if ((mask[i / 64] & (1L << i)) != 0) {
+                cpus.set(i);
+            }
+        }
+        return cpus;
+    }
+
+    // NUMA topology as reported by sysfs; a machine without NUMA has a single node 0
+    public static int numaNodes() {
+        BitSet nodes = parseList(readLine(NODE_DIR + "/online"));
+        return nodes.isEmpty() ? 1 : nodes.length();
+    }
+
+    public static BitSet numaNodeCpus(int node) {
+        BitSet cpus = parseList(readLine(NODE_DIR + "/node" + node + "/cpulist"));
+        if (cpus.isEmpty() && node == 0) {
+            cpus.set(0, Runtime.getRuntime().availableProcessors());
+        }
+        return cpus;
+    }
+
+    public static int numaNodeOf(int cpu) {
+        for (int node = 0, nodes = numaNodes(); node < nodes; node++) {
+            if (new File(NODE_DIR + "/node" + node + "/cpu" + cpu).exists()) {
+                return node;
+            }
+        }
+        return 0;
+    }
+
+    // Parses lists like "0-3,8,10-11"
+    static BitSet parseList(String list) {
+        BitSet result = new BitSet();
+        if (list == null) {
+            return result;
+        }
+
+        for (String range : list.trim().split(",")) {
+            if (range.isEmpty()) {
+                continue;
+            }
+            int dash = range.indexOf('-');
+            if (dash < 0) {
+                result.set(Integer.parseInt(range));
+            } else {
+                result.set(Integer.parseInt(range.substring(0, dash)), Integer.parseInt(range.substring(dash + 1)) + 1);
+            }
+        }
+        return result;
+    }
+
+    private static String readLine(String fileName) {
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(fileName));
+            try {
+                return reader.readLine();
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
 }
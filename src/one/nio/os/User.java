@@ -30,6 +30,7 @@ public final class User {
 
     public static native int setuid(int uid);
     public static native int setgid(int gid);
+    public static native int geteuid();
 
     public static String[] findUser(String user) {
         return find(PASSWD, user);
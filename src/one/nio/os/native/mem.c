@@ -1,7 +1,9 @@
 #include <sys/mman.h>
+#include <sys/syscall.h>
 #include <errno.h>
 #include <fcntl.h>
 #include <stdint.h>
+#include <unistd.h>
 #include <jni.h>
 
 static inline void* cast(jlong value) {
@@ -62,3 +64,31 @@ JNIEXPORT jint JNICALL
 Java_one_nio_os_Mem_posix_1fadvise(JNIEnv* env, jclass cls, jint fd, jlong offset, jlong len, jint advice) {
     return posix_fadvise(fd, offset, len, advice) == 0 ? 0 : errno;
 }
+
+// Raw syscalls: libnuma is not required
+JNIEXPORT jint JNICALL
+Java_one_nio_os_Mem_mbind(JNIEnv* env, jclass cls, jlong addr, jlong len, jint mode, jlong nodemask, jint flags) {
+    unsigned long mask = (unsigned long) nodemask;
+    return syscall(SYS_mbind, cast(addr), (unsigned long) len, mode, &mask, sizeof(mask) * 8, flags) == 0 ? 0 : errno;
+}
+
+JNIEXPORT jint JNICALL
+Java_one_nio_os_Mem_set_1mempolicy(JNIEnv* env, jclass cls, jint mode, jlong nodemask) {
+    unsigned long mask = (unsigned long) nodemask;
+    return syscall(SYS_set_mempolicy, mode, mask == 0 ? NULL : &mask, mask == 0 ? 0 : sizeof(mask) * 8) == 0 ? 0 : errno;
+}
+
+JNIEXPORT jint JNICALL
+Java_one_nio_os_Mem_get_1mempolicy(JNIEnv* env, jclass cls, jintArray mode, jlongArray nodemask) {
+    int policy = 0;
+    unsigned long mask = 0;
+    if (syscall(SYS_get_mempolicy, &policy, &mask, sizeof(mask) * 8, NULL, 0) != 0) {
+        return errno;
+    }
+
+    jint policyValue = policy;
+    jlong maskValue = (jlong) mask;
+    (*env)->SetIntArrayRegion(env, mode, 0, 1, &policyValue);
+    (*env)->SetLongArrayRegion(env, nodemask, 0, 1, &maskValue);
+    return 0;
+}
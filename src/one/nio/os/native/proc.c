@@ -51,3 +51,61 @@ Java_one_nio_os_Proc_sched_1getaffinity(JNIEnv* env, jclass cls, jint pid) {
 
     return mask;
 }
+
+JNIEXPORT jint JNICALL
+Java_one_nio_os_Proc_sched_1setaffinity0(JNIEnv* env, jclass cls, jint pid, jlongArray mask) {
+    int words = (*env)->GetArrayLength(env, mask);
+    int cpus = words * 64;
+    size_t size = CPU_ALLOC_SIZE(cpus > 0 ? cpus : 1);
+    cpu_set_t* set = CPU_ALLOC(cpus > 0 ? cpus : 1);
+    jlong* bits = (*env)->GetLongArrayElements(env, mask, NULL);
+    int cpu, result;
+
+    CPU_ZERO_S(size, set);
+    for (cpu = 0; cpu < cpus; cpu++) {
+        if (bits[cpu / 64] & (1LL << (cpu % 64))) {
+            CPU_SET_S(cpu, size, set);
+        }
+    }
+    (*env)->ReleaseLongArrayElements(env, mask, bits, JNI_ABORT);
+
+    result = sched_setaffinity((pid_t)pid, size, set) == 0 ? 0 : errno;
+    CPU_FREE(set);
+    return result;
+}
+
+JNIEXPORT jlongArray JNICALL
+Java_one_nio_os_Proc_sched_1getaffinity0(JNIEnv* env, jclass cls, jint pid) {
+    jlongArray result;
+    jlong* bits;
+    cpu_set_t* set;
+    size_t size;
+    int cpus, cpu;
+
+    // Grow the set until the kernel mask fits
+    for (cpus = 1024; ; cpus *= 2) {
+        set = CPU_ALLOC(cpus);
+        size = CPU_ALLOC_SIZE(cpus);
+        CPU_ZERO_S(size, set);
+        if (sched_getaffinity((pid_t)pid, size, set) == 0) {
+            break;
+        }
+        CPU_FREE(set);
+        if (errno != EINVAL || cpus >= 1 << 20) {
+            return (*env)->NewLongArray(env, 0);
+        }
+    }
+
+    result = (*env)->NewLongArray(env, cpus / 64);
+    if (result != NULL) {
+        bits = (*env)->GetLongArrayElements(env, result, NULL);
+        for (cpu = 0; cpu < cpus; cpu++) {
+            if (CPU_ISSET_S(cpu, size, set)) {
+                bits[cpu / 64] |= 1LL << (cpu % 64);
+            }
+        }
+        (*env)->ReleaseLongArrayElements(env, result, bits, 0);
+    }
+    CPU_FREE(set);
+    return result;
+}
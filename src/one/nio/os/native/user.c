@@ -12,3 +12,8 @@ JNIEXPORT jint JNICALL
 Java_one_nio_os_User_setgid(JNIEnv* env, jclass cls, jint gid) {
     return setgid((gid_t)gid) == 0 ? 0 : errno;
 }
+
+JNIEXPORT jint JNICALL
+Java_one_nio_os_User_geteuid(JNIEnv* env, jclass cls) {
+    return (jint)geteuid();
+}
@@ -97,11 +97,17 @@ public class SocketPool extends Pool<Socket> implements SocketPoolMXBean {
     public Socket createObject() throws PoolException {
         Socket socket = null;
         try {
-            socket = Socket.create();
-            socket.setKeepAlive(true);
-            socket.setNoDelay(true);
-            socket.setTimeout(connectTimeout);
-            socket.connect(host, port);
+            if (Socket.isUnixAddress(host)) {
+                socket = Socket.createUnixSocket();
+                socket.setTimeout(connectTimeout);
+                socket.connectUnix(Socket.unixPath(host));
+            } else {
+                socket = Socket.create();
+                socket.setKeepAlive(true);
+                socket.setNoDelay(true);
+                socket.setTimeout(connectTimeout);
+                socket.connect(host, port);
+            }
             socket.setTimeout(readTimeout);
             return socket;
         } catch (Exception e) {
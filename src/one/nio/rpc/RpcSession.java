@@ -1,5 +1,7 @@
 package one.nio.rpc;
 
+import one.nio.mem.DirectMemory;
+import one.nio.net.Selector;
 import one.nio.net.Session;
 import one.nio.net.Socket;
 import one.nio.serial.CalcSizeStream;
@@ -7,68 +9,128 @@ import one.nio.serial.DataStream;
 import one.nio.serial.DeserializeStream;
 import one.nio.serial.SerializeStream;
 import one.nio.serial.SerializerNotFoundException;
+import one.nio.util.JavaInternals;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import sun.misc.Unsafe;
+
 import java.io.IOException;
 import java.net.SocketException;
 import java.util.concurrent.RejectedExecutionException;
 
 public class RpcSession extends Session {
     private static final Log log = LogFactory.getLog(RpcSession.class);
-    private static final int BUFFER_SIZE = 8000;
+    private static final Unsafe unsafe = JavaInternals.getUnsafe();
 
     protected final RpcServer server;
-    private byte[] buffer;
+    private long requestBuffer;
     private int bytesRead;
     private int requestSize;
+    private int partialHeader;
 
     public RpcSession(Socket socket, RpcServer server) {
         super(socket);
         this.server = server;
-        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    @Override
+    public synchronized void close() {
+        super.close();
+        if (requestBuffer != 0) {
+            DirectMemory.freeRaw(requestBuffer);
+            requestBuffer = 0;
+        }
+    }
+
+    // Requests handed to workers may still be in progress
+    @Override
+    public synchronized boolean isIdle() {
+        return requestSize == 0 && bytesRead == 0 && !server.getWorkersUsed() && super.isIdle();
     }
 
     @Override
     protected void processRead(byte[] unusedBuffer) throws Exception {
-        byte[] buffer = this.buffer;
-        int bytesRead = this.bytesRead;
-        int requestSize = this.requestSize;
-
-        // Read 4-bytes header
-        if (requestSize == 0) {
-            bytesRead += socket.read(buffer, bytesRead, 4 - bytesRead);
-            if (bytesRead < 4) {
-                this.bytesRead = bytesRead;
-                return;
-            }
-            bytesRead = 0;
+        if (requestSize > 0) {
+            readRequestTail();
+            return;
+        }
 
-            if (buffer[0] != 0) {
+        // Requests are read into the selector's off-heap buffer and deserialized in place
+        long buffer = selector.directBuffer();
+        int length = bytesRead;
+        for (int i = 0; i < length; i++) {
+            unsafe.putByte(buffer + i, (byte) (partialHeader >>> ((length - 1 - i) << 3)));
+        }
+        length += readRaw(buffer + length, Selector.DIRECT_BUFFER_SIZE - length);
+
+        int processed = 0;
+        while (length - processed >= 4) {
+            int requestSize = Integer.reverseBytes(unsafe.getInt(buffer + processed));
+            if ((requestSize & 0xff000000) != 0) {
                 throw new IOException("Invalid request or request too large");
             }
 
-            requestSize = this.requestSize = (buffer[1] & 0xff) << 16 | (buffer[2] & 0xff) << 8 | (buffer[3] & 0xff);
-            if (requestSize > buffer.length) {
-                buffer = this.buffer = new byte[requestSize];
+            int available = length - processed - 4;
+            if (available < requestSize) {
+                // The rest of the request is read directly into a dedicated buffer
+                synchronized (this) {
+                    if (!socket.isOpen()) {
+                        return;
+                    }
+                    requestBuffer = DirectMemory.allocateRaw(requestSize);
+                    unsafe.copyMemory(buffer + processed + 4, requestBuffer, available);
+                    this.bytesRead = available;
+                    this.requestSize = requestSize;
+                }
+                return;
             }
+
+            processRequest(buffer + processed + 4, requestSize);
+            processed += 4 + requestSize;
         }
 
-        // Read request
-        bytesRead += socket.read(buffer, bytesRead, requestSize - bytesRead);
-        if (bytesRead < requestSize) {
-            this.bytesRead = bytesRead;
-            return;
+        // Keep an incomplete 4-bytes header
+        int partialHeader = 0;
+        for (int i = processed; i < length; i++) {
+            partialHeader = partialHeader << 8 | (unsafe.getByte(buffer + i) & 0xff);
         }
+        this.partialHeader = partialHeader;
+        this.bytesRead = length - processed;
+    }
 
-        // Request is complete - deserialize it
-        this.bytesRead = 0;
-        this.requestSize = 0;
+    private void readRequestTail() throws Exception {
+        long address;
+        int requestSize;
 
+        // close() may free the buffer from another thread
+        synchronized (this) {
+            if (requestBuffer == 0) {
+                return;
+            }
+            bytesRead += readRaw(requestBuffer + bytesRead, this.requestSize - bytesRead);
+            if (bytesRead < this.requestSize) {
+                return;
+            }
+            address = requestBuffer;
+            requestSize = this.requestSize;
+            this.requestBuffer = 0;
+            this.bytesRead = 0;
+            this.requestSize = 0;
+        }
+
+        try {
+            processRequest(address, requestSize);
+        } finally {
+            DirectMemory.freeRaw(address);
+        }
+    }
+
+    private void processRequest(long address, int requestSize) throws Exception {
         final Object request;
         try {
-            request = new DeserializeStream(buffer).readObject();
+            request = new DeserializeStream(address, requestSize).readObject();
         } catch (SerializerNotFoundException e) {
             writeResponse(e);
             return;
@@ -76,10 +138,6 @@ public class RpcSession extends Session {
             handleClassNotFound(e);
             server.incRequestsRejected();
             return;
-        } finally {
-            if (requestSize > BUFFER_SIZE) {
-                this.buffer = new byte[BUFFER_SIZE];
-            }
         }
 
         // Perform the invocation
@@ -92,12 +150,20 @@ public class RpcSession extends Session {
                 server.incRequestsRejected();
             }
         } else {
-            writeResponse(server.invoke(request));
+            long startTime = System.nanoTime();
+            Object response = server.invoke(request);
+            server.recordHandlerTime(System.nanoTime() - startTime);
+            writeResponse(response);
             server.incRequestsProcessed();
         }
     }
 
     protected void writeResponse(Object response) throws IOException {
+        byte[] buffer = serializeResponse(response);
+        super.write(buffer, 0, buffer.length);
+    }
+
+    protected byte[] serializeResponse(Object response) throws IOException {
         CalcSizeStream css = new CalcSizeStream();
         css.writeObject(response);
         int responseSize = css.count();
@@ -106,8 +172,8 @@ public class RpcSession extends Session {
         DataStream ds = css.hasCycles() ? new SerializeStream(buffer) : new DataStream(buffer);
         ds.writeInt(responseSize);
         ds.writeObject(response);
-
-        super.write(buffer, 0, buffer.length);
+        server.recordResponseSize(buffer.length);
+        return buffer;
     }
 
     protected void handleClassNotFound(ClassNotFoundException e) throws IOException {
@@ -130,7 +196,9 @@ public class RpcSession extends Session {
         @Override
         public void run() {
             try {
-                writeResponse(server.invoke(request));
+                // Serialize in the worker, leave the I/O to the selector thread
+                byte[] buffer = serializeResponse(server.invoke(request));
+                writeLater(buffer, 0, buffer.length);
             } catch (SocketException e) {
                 if (server.isRunning() && log.isDebugEnabled()) {
                     log.debug("Connection closed: " + clientIp());
@@ -0,0 +1,76 @@
+package one.nio.server;
+
+import one.nio.net.Selector;
+import one.nio.net.Session;
+import one.nio.net.Socket;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+final class AcceptorSession extends Session {
+    private static final Log log = LogFactory.getLog(AcceptorSession.class);
+
+    final Server server;
+    final InetAddress address;
+    final int port;
+
+    long acceptedSessions;
+
+    AcceptorSession(Server server, InetAddress address, int port, int backlog, int recvBuf, int sendBuf, boolean defer) throws IOException {
+        this(server, address, port, Socket.createServerSocket());
+        if (recvBuf != 0) {
+            socket.setRecvBuffer(recvBuf);
+        }
+        if (sendBuf != 0) {
+            socket.setSendBuffer(sendBuf);
+        }
+        if (defer) {
+            socket.setDeferAccept(true);
+        }
+        socket.setNoDelay(true);
+        socket.setReuseAddr(true);
+        socket.setReusePort(true);
+        socket.bind(address, port, backlog);
+        socket.setBlocking(false);
+    }
+
+    // Listening socket inherited from the previous server process, already non-blocking
+    AcceptorSession(Server server, InetAddress address, int port, Socket socket) {
+        super(socket);
+        this.server = server;
+        this.address = address;
+        this.port = port;
+
+        // Listening session is never subject to idle cleanup
+        this.lastAccessTime = 0;
+    }
+
+    @Override
+    public void process(byte[] buffer) {
+        while (server.isRunning()) {
+            Socket socket = null;
+            try {
+                if ((socket = this.socket.accept()) == null) {
+                    return;
+                }
+                socket.setBlocking(false);
+                Session session = server.acceptSession(socket);
+                Selector selector = server.getIncomingCpuSelector(socket);
+                (selector != null ? selector : this.selector).register(session);
+                acceptedSessions++;
+            } catch (Exception e) {
+                if (server.isRunning()) {
+                    log.error("Cannot accept incoming connection", e);
+                }
+                if (socket != null) {
+                    socket.close();
+                } else {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -7,6 +7,7 @@ import one.nio.net.Socket;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.util.Random;
@@ -18,17 +19,40 @@ final class AcceptorThread extends Thread {
     final InetAddress address;
     final int port;
     final Socket serverSocket;
+    final String path;
     final Random random;
 
     long acceptedSessions;
 
     AcceptorThread(Server server, InetAddress address, int port, int backlog, int recvBuf, int sendBuf, boolean defer) throws IOException {
-        super("NIO Acceptor " + address + ":" + port);
+        this(server, "NIO Acceptor " + address + ":" + port, address, port, null, Socket.createServerSocket(), recvBuf, sendBuf);
+        if (defer) {
+            serverSocket.setDeferAccept(true);
+        }
+        serverSocket.setNoDelay(true);
+        serverSocket.setReuseAddr(true);
+        serverSocket.bind(address, port, backlog);
+    }
+
+    AcceptorThread(Server server, String path, int backlog, int recvBuf, int sendBuf) throws IOException {
+        this(server, "NIO Acceptor " + Socket.UNIX_PREFIX + path, null, 0, path, Socket.createUnixSocket(), recvBuf, sendBuf);
+        serverSocket.bindUnix(path, backlog);
+    }
+
+    // Listening socket inherited from the previous server process
+    AcceptorThread(Server server, InetAddress address, int port, String path, Socket serverSocket) {
+        this(server, "NIO Acceptor " + (path != null ? Socket.UNIX_PREFIX + path : address + ":" + port),
+                address, port, path, serverSocket, 0, 0);
+    }
+
+    private AcceptorThread(Server server, String name, InetAddress address, int port, String path, Socket serverSocket, int recvBuf, int sendBuf) {
+        super(name);
         setUncaughtExceptionHandler(server);
         this.server = server;
         this.address = address;
         this.port = port;
-        this.serverSocket = Socket.createServerSocket();
+        this.path = path;
+        this.serverSocket = serverSocket;
         this.random = new Random();
 
         if (recvBuf != 0) {
@@ -37,16 +61,25 @@ final class AcceptorThread extends Thread {
         if (sendBuf != 0) {
             serverSocket.setSendBuffer(sendBuf);
         }
-        if (defer) {
-            serverSocket.setDeferAccept(true);
+    }
+
+    // Stops accepting while the socket stays open for the process it has been passed to
+    void detach() {
+        serverSocket.detach();
+        try {
+            join();
+        } catch (InterruptedException e) {
+            // Ignore
         }
-        serverSocket.setNoDelay(true);
-        serverSocket.setReuseAddr(true);
-        serverSocket.bind(address, port, backlog);
     }
 
     void shutdown() {
+        // After a handoff the socket file belongs to the successor
+        boolean owner = serverSocket.isOpen();
         serverSocket.close();
+        if (path != null && owner) {
+            new File(path).delete();
+        }
         try {
             join();
         } catch (InterruptedException e) {
@@ -56,16 +89,17 @@ final class AcceptorThread extends Thread {
 
     @Override
     public void run() {
-        while (server.isRunning()) {
+        while (server.isRunning() && serverSocket.isOpen()) {
             Socket socket = null;
             try {
                 socket = serverSocket.accept();
                 socket.setBlocking(false);
-                Session session = server.createSession(socket);
-                getSmallestSelector().register(session);
+                Session session = server.acceptSession(socket);
+                Selector selector = server.getIncomingCpuSelector(socket);
+                (selector != null ? selector : getSmallestSelector()).register(session);
                 acceptedSessions++;
             } catch (Exception e) {
-                if (server.isRunning()) {
+                if (server.isRunning() && serverSocket.isOpen()) {
                     log.error("Cannot accept incoming connection", e);
                 }
                 if (socket != null) {
@@ -75,10 +109,14 @@ final class AcceptorThread extends Thread {
         }
     }
 
+    // A selector being retired has already been replaced in server.selectors: read the array again
     private Selector getSmallestSelector() {
-        SelectorThread[] selectors = server.selectors;
-        Selector a = selectors[random.nextInt(selectors.length)].selector;
-        Selector b = selectors[random.nextInt(selectors.length)].selector;
-        return a.size() < b.size() ? a : b;
+        SelectorThread a, b;
+        do {
+            SelectorThread[] selectors = server.selectors;
+            a = selectors[random.nextInt(selectors.length)];
+            b = selectors[random.nextInt(selectors.length)];
+        } while (a.retiring || b.retiring);
+        return a.selector.size() < b.selector.size() ? a.selector : b.selector;
     }
 }
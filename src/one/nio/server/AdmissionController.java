@@ -0,0 +1,57 @@
+package one.nio.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// CoDel-style admission: the shortest queueing delay observed during an interval tells
+// whether a standing queue has formed. While it stays above the target, new requests may
+// wait for a worker no longer than the target instead of the configured queue time.
+final class AdmissionController {
+    private final long target;
+    private final long interval;
+    private final AtomicLong intervalEnd;
+    private final AtomicLong minSojourn;
+
+    private volatile boolean overloaded;
+    private volatile long lastMinSojourn;
+
+    AdmissionController(long targetMillis, long intervalMillis) {
+        this.target = targetMillis * 1000000L;
+        this.interval = intervalMillis * 1000000L;
+        this.intervalEnd = new AtomicLong(System.nanoTime() + interval);
+        this.minSojourn = new AtomicLong(Long.MAX_VALUE);
+    }
+
+    // Maximum time in microseconds a new request may wait for a worker.
+    // Only shortens a configured wait: 0 still means the request is rejected at once
+    long queueTime(long queueTime) {
+        return overloaded && queueTime > 0 ? Math.min(queueTime, target / 1000) : queueTime;
+    }
+
+    // Records the time in nanoseconds a request spent waiting for a worker, whether it got one or not.
+    // Overload ends once some request of an interval is handed off sooner than the target.
+    void sojourn(long delay) {
+        for (long min; delay < (min = minSojourn.get()); ) {
+            if (minSojourn.compareAndSet(min, delay)) {
+                break;
+            }
+        }
+
+        long now = System.nanoTime();
+        long end = intervalEnd.get();
+        if (now - end >= 0 && intervalEnd.compareAndSet(end, now + interval)) {
+            long min = minSojourn.getAndSet(Long.MAX_VALUE);
+            lastMinSojourn = min;
+            overloaded = min >= target;
+        }
+    }
+
+    boolean isOverloaded() {
+        return overloaded;
+    }
+
+    // Minimum sojourn time of the last completed interval in microseconds
+    long getMinSojourn() {
+        long min = lastMinSojourn;
+        return min == Long.MAX_VALUE ? 0 : min / 1000;
+    }
+}
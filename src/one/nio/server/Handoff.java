@@ -0,0 +1,258 @@
+package one.nio.server;
+
+import one.nio.net.Session;
+import one.nio.net.Socket;
+import one.nio.util.Utf8;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+
+// Passes listening sockets, and optionally idle connections, from a running server to the one
+// replacing it over a Unix domain socket. The successor receives the listeners in its constructor
+// and signals once started; only then the predecessor stops accepting, so clients connecting
+// in between wait in the shared backlog rather than being refused.
+//
+// Every message is a kind byte and a key with 2-byte length, followed by a descriptor for listeners and sessions.
+final class Handoff {
+    private static final Log log = LogFactory.getLog(Handoff.class);
+
+    static final byte THREAD_LISTENER  = 1;
+    static final byte SESSION_LISTENER = 2;
+    static final byte LISTENERS_END    = 3;
+    static final byte SESSION          = 4;
+    static final byte END              = 5;
+    static final byte READY            = 6;
+
+    private static final int TIMEOUT = 30000;
+    private static final int READY_TIMEOUT = 120000;
+
+    private final Socket channel;
+    private final ArrayList<Listener> listeners;
+    private final ArrayList<Socket> received;
+    private final HashSet<String> claimedKeys;
+
+    private Handoff(Socket channel) {
+        this.channel = channel;
+        this.listeners = new ArrayList<Listener>();
+        this.received = new ArrayList<Socket>();
+        this.claimedKeys = new HashSet<String>();
+    }
+
+    static String key(InetAddress address, int port) {
+        return address.getHostAddress() + ':' + port;
+    }
+
+    // Successor side: receives the listening sockets of the server running at the path, if any
+    static Handoff connect(String path) throws IOException {
+        Socket channel = Socket.createUnixSocket();
+        try {
+            channel.connectUnix(path);
+        } catch (IOException e) {
+            channel.close();
+            log.info("No server to take over from at " + path);
+            return null;
+        }
+
+        Handoff handoff = new Handoff(channel);
+        try {
+            channel.setTimeout(TIMEOUT);
+            for (;;) {
+                byte kind = handoff.readKind();
+                String key = handoff.readKey();
+                if (kind == LISTENERS_END) {
+                    break;
+                }
+                Socket socket = channel.receiveSocket();
+                handoff.received.add(socket);
+                handoff.listeners.add(new Listener(kind, key, socket));
+            }
+        } catch (IOException e) {
+            handoff.release();
+            throw e;
+        }
+
+        log.info("Received " + handoff.listeners.size() + " listening sockets from " + path);
+        return handoff;
+    }
+
+    // Whether listeners for the key have been received; if so, no new socket should be bound for it
+    boolean inherits(String key) {
+        claimedKeys.add(key);
+        for (Listener listener : listeners) {
+            if (listener.key.equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    Socket takeListener(byte kind, String key) {
+        for (Iterator<Listener> iterator = listeners.iterator(); iterator.hasNext(); ) {
+            Listener listener = iterator.next();
+            if (listener.kind == kind && listener.key.equals(key)) {
+                iterator.remove();
+                return listener.socket;
+            }
+        }
+        return null;
+    }
+
+    // Selector listeners beyond one per selector are spread over the existing selectors
+    void adoptRemainingListeners(Server server, SelectorThread[] selectors) throws IOException {
+        int next = 0;
+        for (Iterator<Listener> iterator = listeners.iterator(); iterator.hasNext(); ) {
+            Listener listener = iterator.next();
+            if (listener.kind == SESSION_LISTENER && claimedKeys.contains(listener.key)) {
+                int colon = listener.key.lastIndexOf(':');
+                InetAddress address = InetAddress.getByName(listener.key.substring(0, colon));
+                int port = Integer.parseInt(listener.key.substring(colon + 1));
+                selectors[next++ % selectors.length].addAcceptor(new AcceptorSession(server, address, port, listener.socket));
+                iterator.remove();
+            }
+        }
+    }
+
+    // Successor side, once started: lets the predecessor stop accepting and adopts the sessions it passes
+    void takeOver(Server server) {
+        int sessions = 0;
+        try {
+            send(READY, "", null);
+            for (;;) {
+                byte kind = readKind();
+                readKey();
+                if (kind == END) {
+                    break;
+                } else if (kind == SESSION) {
+                    server.adoptSession(channel.receiveSocket());
+                    sessions++;
+                }
+            }
+            log.info("Took over " + sessions + " sessions");
+        } catch (IOException e) {
+            log.warn("Handoff interrupted after " + sessions + " sessions", e);
+        } finally {
+            release();
+        }
+    }
+
+    // Unused listeners are closed without shutdown, which would stop the predecessor accepting on them too
+    private void release() {
+        for (Listener listener : listeners) {
+            listener.socket.detach();
+        }
+        listeners.clear();
+        channel.close();
+    }
+
+    // Successor side, when the server cannot be constructed: drops every received listener, including taken ones.
+    // The predecessor keeps serving once the channel is closed
+    void abort() {
+        for (Socket socket : received) {
+            socket.detach();
+        }
+        received.clear();
+        release();
+    }
+
+    // Predecessor side: serves a successor connected to the handoff socket.
+    // Returns normally once this server has stopped accepting on the passed listeners
+    static void serve(Server server, Socket channel, boolean handOffSessions, Socket handoffListener) throws IOException {
+        Handoff handoff = new Handoff(channel);
+        channel.setTimeout(READY_TIMEOUT);
+
+        for (AcceptorThread acceptor : server.acceptors) {
+            String key = acceptor.path != null ? Socket.UNIX_PREFIX + acceptor.path : key(acceptor.address, acceptor.port);
+            handoff.send(THREAD_LISTENER, key, acceptor.serverSocket);
+        }
+        SelectorThread[] selectors = server.selectors;
+        for (SelectorThread selector : selectors) {
+            for (AcceptorSession acceptor : selector.acceptors) {
+                handoff.send(SESSION_LISTENER, key(acceptor.address, acceptor.port), acceptor.socket());
+            }
+        }
+        handoff.send(LISTENERS_END, "", null);
+
+        // The successor may take a while to start; if it fails or hangs, keep serving as before
+        byte kind = handoff.readKind();
+        handoff.readKey();
+        if (kind != READY) {
+            throw new IOException("Unexpected handoff message: " + kind);
+        }
+
+        for (AcceptorThread acceptor : server.acceptors) {
+            acceptor.detach();
+        }
+        CountDownLatch done = new CountDownLatch(selectors.length);
+        for (SelectorThread selector : selectors) {
+            selector.handOff(handoff, handOffSessions, done);
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // The successor binds the handoff path once it gets END, which fails while this server listens on it
+        handoffListener.close();
+        handoff.send(END, "", null);
+    }
+
+    // Called by selector threads; the session is detached once its socket has been passed
+    synchronized boolean sendSession(Session session) {
+        try {
+            send(SESSION, "", session.socket());
+        } catch (IOException e) {
+            log.warn("Cannot hand over session from " + session.clientIp(), e);
+            return false;
+        }
+        session.detach();
+        return true;
+    }
+
+    private synchronized void send(byte kind, String key, Socket socket) throws IOException {
+        byte[] message = new byte[3 + Utf8.length(key)];
+        message[0] = kind;
+        message[1] = (byte) ((message.length - 3) >>> 8);
+        message[2] = (byte) (message.length - 3);
+        Utf8.write(key, message, 3);
+        channel.writeFully(message, 0, message.length);
+        if (socket != null) {
+            channel.sendSocket(socket);
+        }
+    }
+
+    private byte readKind() throws IOException {
+        byte[] header = new byte[1];
+        channel.readFully(header, 0, 1);
+        return header[0];
+    }
+
+    private String readKey() throws IOException {
+        byte[] length = new byte[2];
+        channel.readFully(length, 0, 2);
+        byte[] key = new byte[(length[0] & 0xff) << 8 | (length[1] & 0xff)];
+        if (key.length > 0) {
+            channel.readFully(key, 0, key.length);
+        }
+        return Utf8.read(key, 0, key.length);
+    }
+
+    private static final class Listener {
+        final byte kind;
+        final String key;
+        final Socket socket;
+
+        Listener(byte kind, String key, Socket socket) {
+            this.kind = kind;
+            this.key = key;
+            this.socket = socket;
+        }
+    }
+}
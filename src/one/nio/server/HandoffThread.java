@@ -0,0 +1,104 @@
+package one.nio.server;
+
+import one.nio.net.Socket;
+import one.nio.os.User;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+
+// Waits for a new server process to connect to the handoff socket and passes it the listeners
+final class HandoffThread extends Thread {
+    private static final Log log = LogFactory.getLog(HandoffThread.class);
+
+    final Server server;
+    final String path;
+    final boolean sessions;
+    final int[] trustedUids;
+    final Socket serverSocket;
+
+    private volatile Socket channel;
+    private volatile boolean handedOff;
+
+    HandoffThread(Server server, String path, boolean sessions, String trustedUids) throws IOException {
+        super("NIO Handoff " + path);
+        setUncaughtExceptionHandler(server);
+        this.server = server;
+        this.path = path;
+        this.sessions = sessions;
+        this.trustedUids = parseUids(trustedUids);
+        this.serverSocket = Socket.createUnixSocket();
+        serverSocket.bindUnix(path, 1, 0600);
+    }
+
+    void shutdown() {
+        serverSocket.close();
+        Socket channel = this.channel;
+        if (channel != null) {
+            channel.close();
+        }
+        // Once handed off, the path is bound by the successor
+        if (!handedOff) {
+            new File(path).delete();
+        }
+        // Server.onHandoff() may stop the server from this very thread
+        if (Thread.currentThread() != this) {
+            try {
+                join();
+            } catch (InterruptedException e) {
+                // Ignore
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        while (server.isRunning() && !handedOff && serverSocket.isOpen()) {
+            try {
+                channel = serverSocket.accept();
+                int uid = channel.getPeerUid();
+                if (!isTrusted(uid)) {
+                    log.warn("Refused handoff to uid " + uid + " at " + path);
+                    continue;
+                }
+                log.info("Handing over listening sockets at " + path);
+                Handoff.serve(server, channel, sessions, serverSocket);
+                handedOff = true;
+                log.info("Handoff completed");
+                server.onHandoff();
+            } catch (Exception e) {
+                if (server.isRunning() && serverSocket.isOpen()) {
+                    log.error("Handoff failed", e);
+                }
+            } finally {
+                Socket channel = this.channel;
+                if (channel != null) {
+                    channel.close();
+                    this.channel = null;
+                }
+            }
+        }
+        serverSocket.close();
+    }
+
+    private static int[] parseUids(String uids) {
+        String[] list = uids == null ? new String[0] : uids.split(",");
+        int[] result = new int[list.length + 1];
+        result[0] = User.geteuid();
+        for (int i = 0; i < list.length; i++) {
+            result[i + 1] = Integer.parseInt(list[i].trim());
+        }
+        return result;
+    }
+
+    private boolean isTrusted(int uid) {
+        for (int trustedUid : trustedUids) {
+            if (uid == trustedUid) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,78 @@
+package one.nio.server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Lock-free histogram of non-negative values with logarithmic buckets:
+// every power of two is split into 8 linear sub-buckets, so percentiles are accurate within 12.5%
+final class Histogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+    static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    void record(long value) {
+        counts.incrementAndGet(bucket(value < 0 ? 0 : value));
+    }
+
+    void addTo(long[] sum) {
+        for (int i = 0; i < BUCKETS; i++) {
+            sum[i] += counts.get(i);
+        }
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        return (exp - SUB_BITS + 1) * SUB_BUCKETS + (int) (value >>> (exp - SUB_BITS)) - SUB_BUCKETS;
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS * 2) {
+            return bucket;
+        }
+        int exp = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exp - SUB_BITS);
+    }
+
+    static long upperBound(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowerBound(bucket + 1) - 1;
+    }
+
+    // Upper bounds of the buckets holding PERCENTILES of the merged counts followed by the maximum
+    static long[] percentiles(long[] counts) {
+        long total = 0;
+        int last = -1;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] != 0) {
+                total += counts[i];
+                last = i;
+            }
+        }
+
+        long[] result = new long[PERCENTILES.length + 1];
+        if (total == 0) {
+            return result;
+        }
+
+        long count = 0;
+        for (int i = 0, p = 0; i <= last && p < PERCENTILES.length; i++) {
+            count += counts[i];
+            while (p < PERCENTILES.length && count >= (long) Math.ceil(total * PERCENTILES[p])) {
+                result[p++] = upperBound(i);
+            }
+        }
+        result[PERCENTILES.length] = upperBound(last);
+        return result;
+    }
+}
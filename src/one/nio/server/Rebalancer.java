@@ -0,0 +1,112 @@
+package one.nio.server;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+// Periodically compares selector load, measured as thread CPU time or, if unavailable, as ready events,
+// and moves the busiest sessions from the most loaded selector to the least loaded one
+final class Rebalancer extends Thread {
+    private static final Log log = LogFactory.getLog(Rebalancer.class);
+
+    private static final double IMBALANCE = 2.0;
+    private static final double MIN_CPU_LOAD = 0.2;
+    private static final long MIN_EVENTS_PER_SECOND = 10000;
+
+    private final Server server;
+    private final long interval;
+    private final ThreadMXBean threadBean;
+
+    private SelectorThread[] lastSelectors;
+    private long[] lastLoad;
+
+    Rebalancer(Server server, long interval) {
+        super("NIO Rebalancer");
+        setDaemon(true);
+        setUncaughtExceptionHandler(server);
+        this.server = server;
+        this.interval = interval;
+
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        this.threadBean = threadBean.isThreadCpuTimeSupported() ? threadBean : null;
+    }
+
+    void shutdown() {
+        interrupt();
+    }
+
+    @Override
+    public void run() {
+        while (server.isRunning()) {
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                break;
+            }
+            rebalance();
+        }
+    }
+
+    private long load(SelectorThread selector) {
+        if (threadBean != null) {
+            long cpuTime = threadBean.getThreadCpuTime(selector.getId());
+            if (cpuTime >= 0) {
+                return cpuTime;
+            }
+        }
+        return selector.sessions;
+    }
+
+    private void rebalance() {
+        SelectorThread[] selectors = server.selectors;
+        if (selectors == null) {
+            return;
+        }
+
+        long[] load = new long[selectors.length];
+        for (int i = 0; i < selectors.length; i++) {
+            load[i] = load(selectors[i]);
+        }
+
+        SelectorThread[] lastSelectors = this.lastSelectors;
+        long[] lastLoad = this.lastLoad;
+        this.lastSelectors = selectors;
+        this.lastLoad = load;
+        if (lastSelectors != selectors || selectors.length < 2) {
+            return;
+        }
+
+        int hot = 0;
+        int cold = 0;
+        long[] delta = new long[selectors.length];
+        for (int i = 0; i < selectors.length; i++) {
+            delta[i] = load[i] - lastLoad[i];
+            if (delta[i] > delta[hot]) hot = i;
+            if (delta[i] < delta[cold]) cold = i;
+        }
+
+        long minLoad = threadBean != null
+                ? (long) (interval * 1000000L * MIN_CPU_LOAD)
+                : MIN_EVENTS_PER_SECOND * interval / 1000;
+        if (delta[hot] < minLoad || delta[hot] <= delta[cold] * IMBALANCE) {
+            return;
+        }
+
+        // Move half of the difference to even out the pair
+        final SelectorThread source = selectors[hot];
+        final SelectorThread target = selectors[cold];
+        final double share = (delta[hot] - delta[cold]) / 2.0 / delta[hot];
+        if (log.isDebugEnabled()) {
+            log.debug("Moving " + (int) (share * 100) + "% of load from " + source.getName() + " to " + target.getName());
+        }
+
+        source.selector.execute(new Runnable() {
+            @Override
+            public void run() {
+                source.moveSessions(target, share);
+            }
+        });
+    }
+}
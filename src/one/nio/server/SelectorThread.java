@@ -1,7 +1,10 @@
 package one.nio.server;
 
+import one.nio.net.DatagramSession;
 import one.nio.net.Selector;
 import one.nio.net.Session;
+import one.nio.net.Socket;
+import one.nio.os.Mem;
 import one.nio.os.Proc;
 
 import org.apache.commons.logging.Log;
@@ -9,29 +12,189 @@ import org.apache.commons.logging.LogFactory;
 
 import java.io.IOException;
 import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
 
 final class SelectorThread extends Thread {
     private static final Log log = LogFactory.getLog(SelectorThread.class);
     private static final int BUFFER_SIZE = 64000;
 
+    static final int LOOP_TIME      = 0;
+    static final int QUEUE_TIME     = 1;
+    static final int HANDLER_TIME   = 2;
+    static final int RESPONSE_BYTES = 3;
+
     final Server server;
     final Selector selector;
-    final long affinity;
+    final BitSet affinity;
+    final int node;
+    final boolean deferFlush;
 
+    AcceptorSession[] acceptors;
+    DatagramSession[] datagrams;
     long operations;
     long sessions;
     int maxReady;
 
-    SelectorThread(Server server, int num, long affinity) throws IOException {
+    // Written only by this selector thread, merged with the worker stripes by Server on read
+    final Histogram[] histograms = {new Histogram(), new Histogram(), new Histogram(), new Histogram()};
+
+    // Set when the selector is removed; its sessions are handed over to these selectors
+    private SelectorThread[] successors;
+    volatile boolean retiring;
+
+    SelectorThread(Server server, int num, BitSet affinity, int node, boolean edgeTriggered, boolean deferFlush, int spin) throws IOException {
         super("NIO Selector #" + num);
         setUncaughtExceptionHandler(server);
         this.server = server;
-        this.selector = Selector.create();
+        this.selector = Selector.create(edgeTriggered);
+        this.selector.setSpin(spin);
         this.affinity = affinity;
+        this.node = node;
+        this.deferFlush = deferFlush;
+        this.acceptors = new AcceptorSession[0];
+        this.datagrams = new DatagramSession[0];
+    }
+
+    void addAcceptor(AcceptorSession acceptor) {
+        adoptAcceptor(acceptor);
+        selector.register(acceptor);
+    }
+
+    private synchronized void adoptAcceptor(AcceptorSession acceptor) {
+        acceptors = Arrays.copyOf(acceptors, acceptors.length + 1);
+        acceptors[acceptors.length - 1] = acceptor;
+    }
+
+    // The session is created by the selecting thread once it is running, so that
+    // Server.createDatagramSession() is never called from the Server constructor
+    void addDatagramSocket(final Socket socket) {
+        selector.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    DatagramSession session = server.createDatagramSession(socket);
+                    adoptDatagramSession(session);
+                    selector.register(session);
+                } catch (RuntimeException e) {
+                    socket.close();
+                    throw e;
+                }
+            }
+        });
+    }
+
+    private synchronized void adoptDatagramSession(DatagramSession session) {
+        datagrams = Arrays.copyOf(datagrams, datagrams.length + 1);
+        datagrams[datagrams.length - 1] = session;
+    }
+
+    // Detaches listening sessions and, if requested, passes idle sessions to the successor process
+    void handOff(final Handoff handoff, final boolean sessions, final CountDownLatch done) {
+        selector.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (AcceptorSession acceptor : acceptors) {
+                        acceptor.detach();
+                    }
+                    if (sessions) {
+                        handOffIdleSessions(handoff);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+    }
+
+    private void handOffIdleSessions(Handoff handoff) {
+        ArrayList<Session> idle = new ArrayList<Session>();
+        for (Session session : selector) {
+            if (!(session instanceof AcceptorSession) && !(session instanceof DatagramSession) && session.isIdle()) {
+                idle.add(session);
+            }
+        }
+
+        for (Session session : idle) {
+            if (!handoff.sendSession(session)) {
+                break;
+            }
+        }
+    }
+
+    // Stops the selector after moving all its sessions to the given ones
+    void retire(final SelectorThread[] successors) {
+        retiring = true;
+        selector.execute(new Runnable() {
+            @Override
+            public void run() {
+                SelectorThread.this.successors = successors;
+            }
+        });
+    }
+
+    // Moves the busiest sessions accounting for up to the given share of recent activity.
+    // Runs on this selector thread; listening and datagram sessions stay in place.
+    void moveSessions(SelectorThread target, double share) {
+        // The target may have been retired since the rebalancer chose it
+        if (target.retiring) {
+            return;
+        }
+
+        ArrayList<Candidate> candidates = new ArrayList<Candidate>(selector.size());
+        long total = 0;
+        for (Session session : selector) {
+            long count = session.takeProcessCount();
+            total += count;
+            if (count > 0 && !(session instanceof AcceptorSession) && !(session instanceof DatagramSession)) {
+                candidates.add(new Candidate(session, count));
+            }
+        }
+        Collections.sort(candidates);
+
+        long budget = (long) (total * share);
+        for (Candidate candidate : candidates) {
+            if (candidate.count <= budget) {
+                candidate.session.migrate(target.selector);
+                budget -= candidate.count;
+            }
+        }
+    }
+
+    private void moveAllSessions(SelectorThread[] targets) {
+        ArrayList<Session> sessions = new ArrayList<Session>(selector.size());
+        for (Session session : selector) {
+            sessions.add(session);
+        }
+
+        for (Session session : sessions) {
+            SelectorThread target = targets[0];
+            for (SelectorThread selector : targets) {
+                if (selector.selector.size() < target.selector.size()) {
+                    target = selector;
+                }
+            }
+            if (session instanceof AcceptorSession) {
+                target.adoptAcceptor((AcceptorSession) session);
+            } else if (session instanceof DatagramSession) {
+                target.adoptDatagramSession((DatagramSession) session);
+            }
+            session.migrate(target.selector);
+        }
     }
 
     void shutdown() {
+        for (AcceptorSession acceptor : acceptors) {
+            acceptor.close();
+        }
+        for (DatagramSession session : datagrams) {
+            session.close();
+        }
         selector.close();
         try {
             join();
@@ -42,36 +205,94 @@ final class SelectorThread extends Thread {
 
     @Override
     public void run() {
-        if (affinity != 0 && Proc.IS_SUPPORTED) {
-            Proc.sched_setaffinity(0, affinity);
+        if (affinity != null && Proc.IS_SUPPORTED) {
+            Proc.setAffinity(0, affinity);
+        }
+
+        // Read buffers and off-heap session data allocated by this thread come from the local node
+        if (node >= 0) {
+            Mem.set_mempolicy(Mem.MPOL_PREFERRED, 1L << node);
+        }
+
+        if (deferFlush) {
+            selector.enableDeferredFlush();
         }
 
         final byte[] buffer = new byte[BUFFER_SIZE];
 
-        while (server.isRunning()) {
+        while (server.isRunning() && successors == null) {
             int ready = 0;
-            for (Iterator<Session> selectedSessions = selector.select(); selectedSessions.hasNext(); ready++) {
+            Iterator<Session> selectedSessions = selector.select();
+            long loopStart = System.nanoTime();
+
+            for (; selectedSessions.hasNext(); ready++) {
                 Session session = selectedSessions.next();
                 try {
                     session.process(buffer);
-                } catch (SocketException e) {
-                    if (server.isRunning() && log.isDebugEnabled()) {
-                        log.debug("Connection closed: " + session.clientIp());
-                    }
-                    session.close();
                 } catch (Throwable e) {
-                    if (server.isRunning()) {
-                        log.error("Cannot process session from " + session.clientIp(), e);
-                    }
-                    session.close();
+                    handleError(session, e);
+                }
+            }
+
+            for (Runnable task; (task = selector.nextTask()) != null; ) {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    log.error("Cannot run selector task", e);
+                }
+            }
+
+            for (Session session; (session = selector.nextDeferred()) != null; ) {
+                try {
+                    session.flush();
+                } catch (Throwable e) {
+                    handleError(session, e);
                 }
             }
 
+            selector.expireSessions();
+            histograms[LOOP_TIME].record(System.nanoTime() - loopStart);
+
             operations++;
             sessions += ready;
             if (ready > maxReady) {
                 maxReady = ready;
             }
         }
+
+        if (successors != null) {
+            selector.forwardSessions(successors[0].selector);
+            moveAllSessions(successors);
+            // Tasks queued for the moved sessions, such as deferred writes, must not be lost with the selector
+            selector.forwardTasks(successors[0].selector);
+        }
+        // Releases the native resources of the selector on the thread that was using them
+        selector.close();
+    }
+
+    private void handleError(Session session, Throwable e) {
+        if (e instanceof SocketException) {
+            if (server.isRunning() && log.isDebugEnabled()) {
+                log.debug("Connection closed: " + session.clientIp());
+            }
+        } else if (server.isRunning()) {
+            log.error("Cannot process session from " + session.clientIp(), e);
+        }
+        session.close();
+    }
+
+    private static final class Candidate implements Comparable<Candidate> {
+        final Session session;
+        final long count;
+
+        Candidate(Session session, long count) {
+            this.session = session;
+            this.count = count;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return count > other.count ? -1 : count < other.count ? 1 : 0;
+        }
     }
 }
@@ -1,21 +1,35 @@
 package one.nio.server;
 
 import one.nio.net.ConnectionString;
+import one.nio.net.DatagramSession;
+import one.nio.net.Selector;
 import one.nio.net.Session;
 import one.nio.net.Socket;
 import one.nio.mgt.Management;
+import one.nio.os.Mem;
+import one.nio.os.NativeLibrary;
+import one.nio.os.Proc;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class Server implements ServerMXBean, Thread.UncaughtExceptionHandler {
     private static final Log log = LogFactory.getLog(Server.class);
 
+    private static final int MAX_VIRTUAL_WORKERS = 10000;
+
+    private final int port;
+    private final boolean reusePort;
+    private final boolean datagram;
+    private final int keepAlive;
+    private final boolean incomingCpu;
     private final SelectorStats selectorStats;
     private final QueueStats queueStats;
     private final AtomicLong requestsProcessed;
@@ -24,10 +38,21 @@ public class Server implements ServerMXBean, Thread.UncaughtExceptionHandler {
     private volatile boolean running;
 
     protected AcceptorThread[] acceptors;
-    protected SelectorThread[] selectors;
+    protected volatile SelectorThread[] selectors;
+    private final Histogram[][] workerHistograms;
     protected WorkerPool workers;
-    protected CleanupThread cleanup;
     protected boolean useWorkers;
+    private VirtualWorkerPool virtualWorkers;
+    private volatile AdmissionController admission;
+    private final long rebalanceInterval;
+    private volatile int highWatermark;
+    private volatile int lowWatermark;
+    private Rebalancer rebalancer;
+    private final String handoffPath;
+    private final boolean handoffSessions;
+    private final String handoffUids;
+    private Handoff handoff;
+    private HandoffThread handoffThread;
 
     public Server(ConnectionString conn) throws IOException {
         int processors = Runtime.getRuntime().availableProcessors();
@@ -40,65 +65,251 @@ public class Server implements ServerMXBean, Thread.UncaughtExceptionHandler {
         int sendBuf = conn.getIntParam("sendBuf", buffers);
         boolean defer = conn.getBooleanParam("defer", false);
         int selectorCount = conn.getIntParam("selectors", processors);
-        boolean affinity = conn.getBooleanParam("affinity", false);
         int minWorkers = conn.getIntParam("minWorkers", 0);
         int maxWorkers = conn.getIntParam("maxWorkers", 1000);
         long queueTime = conn.getLongParam("queueTime", 0);
         int keepAlive = conn.getIntParam("keepalive", 0);
 
-        this.acceptors = new AcceptorThread[hosts.length];
-        for (int i = 0; i < hosts.length; i++) {
-            InetAddress address = InetAddress.getByName(hosts[i]);
-            acceptors[i] = new AcceptorThread(this, address, port, backlog, recvBuf, sendBuf, defer);
+        this.port = port;
+        this.reusePort = conn.getBooleanParam("reusePort", false) && NativeLibrary.IS_SUPPORTED;
+        if (!reusePort && conn.getBooleanParam("reusePort", false)) {
+            log.warn("reusePort requires native library, falling back to acceptor threads");
         }
 
-        this.selectors = new SelectorThread[selectorCount];
-        for (int i = 0; i < selectorCount; i++) {
-            this.selectors[i] = new SelectorThread(this, i, affinity ? 1 << (i % processors) : 0);
-        }
+        // Datagram sockets are bound per selector with SO_REUSEPORT and need no acceptors
+        this.datagram = conn.getBooleanParam("datagram", false);
+
+        // Listening sockets of a server process running at the handoff path are taken over
+        // in the mode they were used in, instead of binding new ones for the same hosts
+        this.handoffPath = conn.getStringParam("handoff");
+        this.handoffSessions = conn.getBooleanParam("handoffSessions", false);
+        // Besides processes of the same user, only the listed uids may take over
+        this.handoffUids = conn.getStringParam("handoffUids");
+        this.handoff = handoffPath != null && !datagram ? Handoff.connect(handoffPath) : null;
+
+        // Inherited listeners would stay open in this process if the server cannot be constructed
+        boolean constructed = false;
+        try {
+            // Unix sockets cannot share a path between selectors and always get an acceptor thread
+            ArrayList<AcceptorThread> acceptors = new ArrayList<AcceptorThread>(hosts.length);
+            for (String host : datagram ? new String[0] : hosts) {
+                if (Socket.isUnixAddress(host)) {
+                    Socket inherited = handoff != null ? handoff.takeListener(Handoff.THREAD_LISTENER, host) : null;
+                    if (inherited != null) {
+                        acceptors.add(new AcceptorThread(this, null, 0, Socket.unixPath(host), inherited));
+                    } else {
+                        acceptors.add(new AcceptorThread(this, Socket.unixPath(host), backlog, recvBuf, sendBuf));
+                    }
+                } else {
+                    InetAddress address = InetAddress.getByName(host);
+                    if (handoff != null && handoff.inherits(Handoff.key(address, port))) {
+                        Socket inherited = handoff.takeListener(Handoff.THREAD_LISTENER, Handoff.key(address, port));
+                        if (inherited != null) {
+                            acceptors.add(new AcceptorThread(this, address, port, null, inherited));
+                        }
+                    } else if (!reusePort) {
+                        acceptors.add(new AcceptorThread(this, address, port, backlog, recvBuf, sendBuf, defer));
+                    }
+                }
+            }
+            this.acceptors = acceptors.toArray(new AcceptorThread[acceptors.size()]);
 
-        this.workers = new WorkerPool(this, minWorkers, maxWorkers, queueTime);
-        this.useWorkers = conn.getStringParam("minWorkers") != null || conn.getStringParam("maxWorkers") != null;
+            this.selectors = new SelectorThread[selectorCount];
+            for (int i = 0; i < selectorCount; i++) {
+                this.selectors[i] = createSelector(conn, i);
+            }
+            if (handoff != null) {
+                handoff.adoptRemainingListeners(this, selectors);
+            }
 
-        if (keepAlive > 0) {
-            this.cleanup = new CleanupThread(this, keepAlive);
-        }
+            this.workers = new WorkerPool(this, minWorkers, maxWorkers, queueTime);
+            this.useWorkers = useWorkers(conn);
+            if ("virtual".equals(conn.getStringParam("workers"))) {
+                this.virtualWorkers = VirtualWorkerPool.create(this, conn.getIntParam("maxWorkers", MAX_VIRTUAL_WORKERS), queueTime);
+            }
+            setAdmission(conn);
 
-        this.selectorStats = new SelectorStats();
-        this.queueStats = new QueueStats();
-        this.requestsProcessed = new AtomicLong();
-        this.requestsRejected = new AtomicLong();
+            this.keepAlive = keepAlive * 1000;
+            this.incomingCpu = conn.getBooleanParam("incomingCpu", false) && NativeLibrary.IS_SUPPORTED;
+            this.rebalanceInterval = conn.getLongParam("rebalanceInterval", 0);
+            setWatermarks(conn);
 
-        if (conn.getBooleanParam("jmx", true)) {
-            Management.registerMXBean(this, "one.nio.server:type=Server,port=" + port);
+            // Stripes for stats recorded by workers and other non-selector threads, merged on read
+            this.workerHistograms = new Histogram[Integer.highestOneBit(processors * 2 - 1)][];
+            for (int i = 0; i < workerHistograms.length; i++) {
+                workerHistograms[i] = new Histogram[]{new Histogram(), new Histogram(), new Histogram(), new Histogram()};
+            }
+
+            this.selectorStats = new SelectorStats();
+            this.queueStats = new QueueStats();
+            this.requestsProcessed = new AtomicLong();
+            this.requestsRejected = new AtomicLong();
+
+            if (conn.getBooleanParam("jmx", true)) {
+                Management.registerMXBean(this, "one.nio.server:type=Server,port=" + port);
+            }
+            constructed = true;
+        } finally {
+            if (!constructed && handoff != null) {
+                handoff.abort();
+            }
         }
     }
 
     public boolean reconfigure(ConnectionString conn) throws IOException {
-        if (acceptors[0].port != conn.getPort()) {
+        if (port != conn.getPort()) {
             return false;
         }
 
         workers.setCorePoolSize(conn.getIntParam("minWorkers", 0));
         workers.setMaximumPoolSize(conn.getIntParam("maxWorkers", 1000));
         workers.setQueueTime(conn.getLongParam("queueTime", 0));
-        useWorkers = conn.getStringParam("minWorkers") != null || conn.getStringParam("maxWorkers") != null;
+        useWorkers = useWorkers(conn);
+        if (virtualWorkers != null) {
+            virtualWorkers.setMaxTasks(conn.getIntParam("maxWorkers", MAX_VIRTUAL_WORKERS));
+            virtualWorkers.setQueueTime(conn.getLongParam("queueTime", 0));
+        }
+        setAdmission(conn);
+        setWatermarks(conn);
 
         int processors = Runtime.getRuntime().availableProcessors();
         int selectorCount = conn.getIntParam("selectors", processors);
         if (selectorCount > selectors.length) {
-            boolean affinity = conn.getBooleanParam("affinity", false);
             SelectorThread[] newSelectors = Arrays.copyOf(selectors, selectorCount);
             for (int i = selectors.length; i < selectorCount; i++) {
-                newSelectors[i] = new SelectorThread(this, i, affinity ? 1 << (i % processors) : 0);
+                newSelectors[i] = createSelector(conn, i);
                 newSelectors[i].start();
             }
             selectors = newSelectors;
+        } else if (selectorCount < selectors.length && selectorCount > 0) {
+            SelectorThread[] oldSelectors = selectors;
+            SelectorThread[] newSelectors = Arrays.copyOf(oldSelectors, selectorCount);
+            selectors = newSelectors;
+            for (int i = selectorCount; i < oldSelectors.length; i++) {
+                oldSelectors[i].retire(newSelectors);
+            }
         }
 
         return true;
     }
 
+    private void setAdmission(ConnectionString conn) {
+        admission = createAdmission(conn);
+        workers.setAdmission(admission);
+        if (virtualWorkers != null) {
+            virtualWorkers.setAdmission(admission);
+        }
+    }
+
+    // admissionTarget and admissionInterval are in milliseconds, 0 target disables admission control.
+    // Admission only shortens the wait for a worker, so it needs a queueTime to act upon
+    static AdmissionController createAdmission(ConnectionString conn) {
+        int target = conn.getIntParam("admissionTarget", 0);
+        if (target <= 0) {
+            return null;
+        }
+        if (conn.getLongParam("queueTime", 0) <= 0) {
+            log.warn("admissionTarget requires queueTime, admission control is disabled");
+            return null;
+        }
+        return new AdmissionController(target, conn.getIntParam("admissionInterval", 100));
+    }
+
+    // Bytes queued for writing above which new sessions stop reading; applies to new connections only
+    private void setWatermarks(ConnectionString conn) {
+        highWatermark = conn.getIntParam("highWatermark", 0);
+        lowWatermark = conn.getIntParam("lowWatermark", highWatermark / 2);
+    }
+
+    private static boolean useWorkers(ConnectionString conn) {
+        return conn.getStringParam("workers") != null || conn.getStringParam("minWorkers") != null ||
+                conn.getStringParam("maxWorkers") != null;
+    }
+
+    private SelectorThread createSelector(ConnectionString conn, int num) throws IOException {
+        int processors = Runtime.getRuntime().availableProcessors();
+        boolean affinity = conn.getBooleanParam("affinity", false);
+        boolean numa = conn.getBooleanParam("numa", false) && Proc.IS_SUPPORTED;
+        boolean edgeTriggered = conn.getBooleanParam("edgeTriggered", false);
+        boolean deferFlush = conn.getBooleanParam("deferFlush", false);
+        int spin = conn.getIntParam("spin", 0);
+
+        BitSet cpus = null;
+        int node = -1;
+        if (numa) {
+            // Selectors are spread over nodes round-robin and kept on the CPUs of their node
+            int nodes = Math.min(Proc.numaNodes(), 64);
+            node = num % nodes;
+            cpus = Proc.numaNodeCpus(node);
+            if (affinity) {
+                cpus = nthCpu(cpus, num / nodes);
+            }
+        } else if (affinity) {
+            cpus = new BitSet();
+            cpus.set(num % processors);
+        }
+
+        SelectorThread selector;
+        if (node >= 0) {
+            // Selector structures allocated by the constructor are placed on the node as well;
+            // the policy of the calling thread, which belongs to the application, is restored afterwards
+            int[] mode = {Mem.MPOL_DEFAULT};
+            long[] nodemask = {0};
+            Mem.get_mempolicy(mode, nodemask);
+            Mem.set_mempolicy(Mem.MPOL_PREFERRED, 1L << node);
+            try {
+                selector = new SelectorThread(this, num, cpus, node, edgeTriggered, deferFlush, spin);
+            } finally {
+                Mem.set_mempolicy(mode[0], nodemask[0]);
+            }
+        } else {
+            selector = new SelectorThread(this, num, cpus, node, edgeTriggered, deferFlush, spin);
+        }
+
+        if (datagram) {
+            int buffers = conn.getIntParam("buffers", 0);
+            int recvBuf = conn.getIntParam("recvBuf", buffers);
+            int sendBuf = conn.getIntParam("sendBuf", buffers);
+            for (String host : conn.getHosts()) {
+                selector.addDatagramSocket(bindDatagramSocket(InetAddress.getByName(host), recvBuf, sendBuf));
+            }
+        } else if (reusePort || handoff != null) {
+            int backlog = conn.getIntParam("backlog", 128);
+            int buffers = conn.getIntParam("buffers", 0);
+            int recvBuf = conn.getIntParam("recvBuf", buffers);
+            int sendBuf = conn.getIntParam("sendBuf", buffers);
+            boolean defer = conn.getBooleanParam("defer", false);
+            for (String host : conn.getHosts()) {
+                if (Socket.isUnixAddress(host)) {
+                    continue;
+                }
+                InetAddress address = InetAddress.getByName(host);
+                if (handoff != null && handoff.inherits(Handoff.key(address, port))) {
+                    Socket inherited = handoff.takeListener(Handoff.SESSION_LISTENER, Handoff.key(address, port));
+                    if (inherited != null) {
+                        selector.addAcceptor(new AcceptorSession(this, address, port, inherited));
+                    }
+                } else if (reusePort) {
+                    selector.addAcceptor(new AcceptorSession(this, address, port, backlog, recvBuf, sendBuf, defer));
+                }
+            }
+        }
+
+        return selector;
+    }
+
+    private static BitSet nthCpu(BitSet cpus, int n) {
+        BitSet result = new BitSet();
+        int cpu = cpus.nextSetBit(0);
+        for (n %= Math.max(cpus.cardinality(), 1); n > 0 && cpu >= 0; n--) {
+            cpu = cpus.nextSetBit(cpu + 1);
+        }
+        if (cpu >= 0) {
+            result.set(cpu);
+        }
+        return result;
+    }
+
     public void start() {
         running = true;
         for (SelectorThread selector : selectors) {
@@ -107,16 +318,40 @@ public class Server implements ServerMXBean, Thread.UncaughtExceptionHandler {
         for (AcceptorThread acceptor : acceptors) {
             acceptor.start();
         }
-        if (cleanup != null) {
-            cleanup.start();
+        if (rebalanceInterval > 0) {
+            rebalancer = new Rebalancer(this, rebalanceInterval);
+            rebalancer.start();
         }
+
+        if (handoff != null) {
+            handoff.takeOver(this);
+            handoff = null;
+        }
+        if (handoffPath != null) {
+            try {
+                handoffThread = new HandoffThread(this, handoffPath, handoffSessions, handoffUids);
+                handoffThread.start();
+            } catch (IOException e) {
+                log.error("Cannot listen for handoff at " + handoffPath, e);
+            }
+        }
+    }
+
+    // Called by the handoff thread once a new server process accepts on the listening sockets.
+    // Sessions that have not been handed over are still served until the server is stopped
+    protected void onHandoff() {
+        // Override to stop the server when the remaining sessions are done
     }
 
     public void stop() {
         running = false;
-        if (cleanup != null) {
-            cleanup.shutdown();
-            cleanup = null;
+        if (handoffThread != null) {
+            handoffThread.shutdown();
+            handoffThread = null;
+        }
+        if (rebalancer != null) {
+            rebalancer.shutdown();
+            rebalancer = null;
         }
         if (acceptors != null) {
             for (AcceptorThread acceptor : acceptors) {
@@ -136,10 +371,83 @@ public class Server implements ServerMXBean, Thread.UncaughtExceptionHandler {
         }
     }
 
+    // Idle sessions are closed by the timer wheel of their selector
+    final Session acceptSession(Socket socket) {
+        Session session = createSession(socket);
+        if (keepAlive > 0) {
+            session.setTimeouts(keepAlive, keepAlive * 8);
+        }
+        if (highWatermark > 0) {
+            session.setWatermarks(highWatermark, lowWatermark);
+        }
+        return session;
+    }
+
+    // Registers a connection taken over from the previous server process
+    final void adoptSession(Socket socket) {
+        socket.setBlocking(false);
+        Session session = acceptSession(socket);
+        Selector selector = getIncomingCpuSelector(socket);
+        if (selector == null) {
+            for (SelectorThread thread : selectors) {
+                if (selector == null || thread.selector.size() < selector.size()) {
+                    selector = thread.selector;
+                }
+            }
+        }
+        selector.register(session);
+    }
+
+    // Selector pinned to the CPU that received packets of the connection;
+    // null if steering is off or the CPU is unknown
+    final Selector getIncomingCpuSelector(Socket socket) {
+        if (!incomingCpu) {
+            return null;
+        }
+        int cpu = socket.getIncomingCpu();
+        if (cpu < 0) {
+            return null;
+        }
+
+        SelectorThread[] selectors = this.selectors;
+        Selector best = null;
+        for (SelectorThread selector : selectors) {
+            if (selector.affinity != null && selector.affinity.get(cpu) && (best == null || selector.selector.size() < best.size())) {
+                best = selector.selector;
+            }
+        }
+        return best != null ? best : selectors[cpu % selectors.length].selector;
+    }
+
     public Session createSession(Socket socket) {
         return new Session(socket);
     }
 
+    // Called by the selecting thread for every datagram socket of the selector
+    public DatagramSession createDatagramSession(Socket socket) {
+        return new DatagramSession(socket);
+    }
+
+    private Socket bindDatagramSocket(InetAddress address, int recvBuf, int sendBuf) throws IOException {
+        Socket socket = Socket.createDatagramSocket();
+        try {
+            if (recvBuf != 0) {
+                socket.setRecvBuffer(recvBuf);
+            }
+            if (sendBuf != 0) {
+                socket.setSendBuffer(sendBuf);
+            }
+            socket.setReuseAddr(true);
+            socket.setReusePort(true);
+            socket.bind(address, port, 0);
+            socket.setBlocking(false);
+            return socket;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
     public final long incRequestsProcessed() {
         return requestsProcessed.incrementAndGet();
     }
@@ -148,6 +456,24 @@ public class Server implements ServerMXBean, Thread.UncaughtExceptionHandler {
         return requestsRejected.incrementAndGet();
     }
 
+    public final void recordHandlerTime(long nanos) {
+        localStats()[SelectorThread.HANDLER_TIME].record(nanos);
+    }
+
+    public final void recordResponseSize(int bytes) {
+        localStats()[SelectorThread.RESPONSE_BYTES].record(bytes);
+    }
+
+    // Histograms are sharded by selector; other threads never write to those and are spread over
+    // worker stripes by thread id instead
+    private Histogram[] localStats() {
+        Thread thread = Thread.currentThread();
+        if (thread instanceof SelectorThread && ((SelectorThread) thread).server == this) {
+            return ((SelectorThread) thread).histograms;
+        }
+        return workerHistograms[(int) thread.getId() & (workerHistograms.length - 1)];
+    }
+
     @Override
     public final boolean isRunning() {
         return running;
@@ -169,12 +495,63 @@ public class Server implements ServerMXBean, Thread.UncaughtExceptionHandler {
 
     @Override
     public int getWorkers() {
-        return workers.getPoolSize();
+        return virtualWorkers != null ? virtualWorkers.getActiveCount() : workers.getPoolSize();
     }
 
     @Override
     public int getWorkersActive() {
-        return workers.getActiveCount();
+        return virtualWorkers != null ? virtualWorkers.getActiveCount() : workers.getActiveCount();
+    }
+
+    @Override
+    public boolean getAdmissionOverloaded() {
+        AdmissionController admission = this.admission;
+        return admission != null && admission.isOverloaded();
+    }
+
+    @Override
+    public long getAdmissionSojourn() {
+        AdmissionController admission = this.admission;
+        return admission != null ? admission.getMinSojourn() : 0;
+    }
+
+    @Override
+    public long[] getSelectorLoopTime() {
+        return percentiles(SelectorThread.LOOP_TIME, 1000);
+    }
+
+    @Override
+    public long[] getWorkerQueueTime() {
+        return percentiles(SelectorThread.QUEUE_TIME, 1000);
+    }
+
+    @Override
+    public long[] getHandlerTime() {
+        return percentiles(SelectorThread.HANDLER_TIME, 1000);
+    }
+
+    @Override
+    public long[] getResponseBytes() {
+        return percentiles(SelectorThread.RESPONSE_BYTES, 1);
+    }
+
+    private long[] percentiles(int histogram, long divisor) {
+        long[] counts = new long[Histogram.BUCKETS];
+        SelectorThread[] selectors = this.selectors;
+        if (selectors != null) {
+            for (SelectorThread selector : selectors) {
+                selector.histograms[histogram].addTo(counts);
+            }
+        }
+        for (Histogram[] stripe : workerHistograms) {
+            stripe[histogram].addTo(counts);
+        }
+
+        long[] result = Histogram.percentiles(counts);
+        for (int i = 0; i < result.length; i++) {
+            result[i] /= divisor;
+        }
+        return result;
     }
 
     @Override
@@ -183,6 +560,11 @@ public class Server implements ServerMXBean, Thread.UncaughtExceptionHandler {
         for (AcceptorThread acceptor : acceptors) {
             result += acceptor.acceptedSessions;
         }
+        for (SelectorThread selector : selectors) {
+            for (AcceptorSession acceptor : selector.acceptors) {
+                result += acceptor.acceptedSessions;
+            }
+        }
         return result;
     }
 
@@ -211,6 +593,16 @@ public class Server implements ServerMXBean, Thread.UncaughtExceptionHandler {
         return selectorStats.getSessions();
     }
 
+    @Override
+    public long getSelectorSpinWakeups() {
+        return selectorStats.getSpinWakeups();
+    }
+
+    @Override
+    public long getSelectorParks() {
+        return selectorStats.getParks();
+    }
+
     @Override
     public double getQueueAvgLength() {
         return queueStats.getAvgLength();
@@ -247,16 +639,34 @@ public class Server implements ServerMXBean, Thread.UncaughtExceptionHandler {
             acceptor.acceptedSessions = 0;
         }
         for (SelectorThread selector : selectors) {
+            for (AcceptorSession acceptor : selector.acceptors) {
+                acceptor.acceptedSessions = 0;
+            }
             selector.operations = 0;
             selector.sessions = 0;
             selector.maxReady = 0;
+            selector.selector.resetStats();
+            for (Histogram histogram : selector.histograms) {
+                histogram.reset();
+            }
+        }
+        for (Histogram[] stripe : workerHistograms) {
+            for (Histogram histogram : stripe) {
+                histogram.reset();
+            }
         }
         requestsProcessed.set(0);
         requestsRejected.set(0);
     }
 
     public final void asyncExecute(Runnable command) {
-        workers.execute(command);
+        command = new TimedTask(command);
+
+        if (virtualWorkers != null) {
+            virtualWorkers.execute(command);
+        } else {
+            workers.execute(command);
+        }
     }
 
     @Override
@@ -264,11 +674,36 @@ public class Server implements ServerMXBean, Thread.UncaughtExceptionHandler {
         log.fatal("Fatal error in " + t, e);
     }
 
+    // Records how long a request waited for a worker and how long the worker took
+    private final class TimedTask implements Runnable {
+        private final Runnable command;
+        private final long submitTime;
+
+        TimedTask(Runnable command) {
+            this.command = command;
+            this.submitTime = System.nanoTime();
+        }
+
+        @Override
+        public void run() {
+            Histogram[] histograms = localStats();
+            long startTime = System.nanoTime();
+            histograms[SelectorThread.QUEUE_TIME].record(startTime - submitTime);
+            try {
+                command.run();
+            } finally {
+                histograms[SelectorThread.HANDLER_TIME].record(System.nanoTime() - startTime);
+            }
+        }
+    }
+
     private class SelectorStats {
         private long expireTime;
         private long operations;
         private long sessions;
         private int maxReady;
+        private long spinWakeups;
+        private long parks;
 
         synchronized long getOperations() {
             ensureRecent();
@@ -290,6 +725,16 @@ public class Server implements ServerMXBean, Thread.UncaughtExceptionHandler {
             return maxReady;
         }
 
+        synchronized long getSpinWakeups() {
+            ensureRecent();
+            return spinWakeups;
+        }
+
+        synchronized long getParks() {
+            ensureRecent();
+            return parks;
+        }
+
         private void ensureRecent() {
             long currentTime = System.currentTimeMillis();
             if (currentTime < expireTime) {
@@ -299,15 +744,21 @@ public class Server implements ServerMXBean, Thread.UncaughtExceptionHandler {
             long operations = 0;
             long sessions = 0;
             int maxSelected = 0;
+            long spinWakeups = 0;
+            long parks = 0;
             for (SelectorThread selector : selectors) {
                 operations += selector.operations;
                 sessions += selector.sessions;
                 maxSelected = Math.max(maxSelected, selector.maxReady);
+                spinWakeups += selector.selector.getSpinWakeups();
+                parks += selector.selector.getParks();
             }
 
             this.operations = operations;
             this.sessions = sessions;
             this.maxReady = maxSelected;
+            this.spinWakeups = spinWakeups;
+            this.parks = parks;
             this.expireTime = currentTime + 1000;
         }
     }
@@ -6,12 +6,23 @@ public interface ServerMXBean {
     boolean getWorkersUsed();
     int getWorkers();
     int getWorkersActive();
+    boolean getAdmissionOverloaded();
+    long getAdmissionSojourn();
     long getAcceptedSessions();
     int getSelectorCount();
     double getSelectorAvgReady();
     int getSelectorMaxReady();
     long getSelectorOperations();
     long getSelectorSessions();
+    long getSelectorSpinWakeups();
+    long getSelectorParks();
+
+    // Percentiles p50, p90, p99, p99.9 and the maximum; times are in microseconds
+    long[] getSelectorLoopTime();
+    long[] getWorkerQueueTime();
+    long[] getHandlerTime();
+    long[] getResponseBytes();
+
     double getQueueAvgLength();
     long getQueueAvgBytes();
     long getQueueMaxLength();
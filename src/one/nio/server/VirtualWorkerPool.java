@@ -0,0 +1,132 @@
+package one.nio.server;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// Runs every task on its own virtual thread; the number of tasks in flight is limited
+// by a semaphore instead of the number of platform threads.
+// Virtual threads are looked up reflectively, so the class loads on any JDK but works only on 21+.
+final class VirtualWorkerPool implements Executor {
+    private static final Log log = LogFactory.getLog(VirtualWorkerPool.class);
+
+    private final ThreadFactory factory;
+    private final Limiter limiter;
+    private volatile long queueTime;
+    private volatile AdmissionController admission;
+
+    private VirtualWorkerPool(ThreadFactory factory, int maxTasks, long queueTime) {
+        this.factory = factory;
+        this.limiter = new Limiter(maxTasks);
+        this.queueTime = queueTime;
+    }
+
+    // Returns null if the JVM does not support virtual threads
+    static VirtualWorkerPool create(Server server, int maxTasks, long queueTime) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "NIO Virtual Worker #", 1L);
+            builder = builderClass.getMethod("uncaughtExceptionHandler", Thread.UncaughtExceptionHandler.class).invoke(builder, server);
+            Method factory = builderClass.getMethod("factory");
+            return new VirtualWorkerPool((ThreadFactory) factory.invoke(builder), maxTasks, queueTime);
+        } catch (Exception e) {
+            log.warn("Virtual threads are not supported: " + e);
+            return null;
+        }
+    }
+
+    void setMaxTasks(int maxTasks) {
+        limiter.resize(maxTasks);
+    }
+
+    void setQueueTime(long queueTime) {
+        this.queueTime = queueTime;
+    }
+
+    void setAdmission(AdmissionController admission) {
+        this.admission = admission;
+    }
+
+    int getActiveCount() {
+        return limiter.active();
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        if (!acquire()) {
+            throw new RejectedExecutionException("Too many tasks in progress: " + limiter.active());
+        }
+
+        try {
+            factory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        command.run();
+                    } finally {
+                        limiter.release();
+                    }
+                }
+            }).start();
+        } catch (RuntimeException e) {
+            limiter.release();
+            throw e;
+        } catch (Error e) {
+            limiter.release();
+            throw e;
+        }
+    }
+
+    private boolean acquire() {
+        AdmissionController admission = this.admission;
+        if (admission == null) {
+            return acquire(queueTime);
+        }
+
+        long startTime = System.nanoTime();
+        boolean result = acquire(admission.queueTime(queueTime));
+        admission.sojourn(System.nanoTime() - startTime);
+        return result;
+    }
+
+    private boolean acquire(long queueTime) {
+        if (queueTime <= 0) {
+            return limiter.tryAcquire();
+        }
+        try {
+            return limiter.tryAcquire(queueTime, TimeUnit.MICROSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static final class Limiter extends Semaphore {
+        private int limit;
+
+        Limiter(int limit) {
+            super(limit);
+            this.limit = limit;
+        }
+
+        synchronized void resize(int newLimit) {
+            if (newLimit > limit) {
+                release(newLimit - limit);
+            } else if (newLimit < limit) {
+                reducePermits(limit - newLimit);
+            }
+            limit = newLimit;
+        }
+
+        synchronized int active() {
+            return limit - availablePermits();
+        }
+    }
+}
@@ -21,6 +21,10 @@ final class WorkerPool extends ThreadPoolExecutor implements ThreadFactory {
         ((WaitingSynchronousQueue) getQueue()).queueTime = queueTime;
     }
 
+    void setAdmission(AdmissionController admission) {
+        ((WaitingSynchronousQueue) getQueue()).admission = admission;
+    }
+
     @Override
     public Thread newThread(Runnable r) {
         Thread thread = new Thread(r, "NIO Worker #" + index.incrementAndGet());
@@ -29,7 +33,8 @@ final class WorkerPool extends ThreadPoolExecutor implements ThreadFactory {
     }
 
     private static final class WaitingSynchronousQueue<E> extends SynchronousQueue<E> {
-        long queueTime;
+        volatile long queueTime;
+        volatile AdmissionController admission;
 
         WaitingSynchronousQueue(long queueTime) {
             this.queueTime = queueTime;
@@ -37,6 +42,18 @@ final class WorkerPool extends ThreadPoolExecutor implements ThreadFactory {
 
         @Override
         public boolean offer(E element) {
+            AdmissionController admission = this.admission;
+            if (admission == null) {
+                return offer(element, queueTime);
+            }
+
+            long startTime = System.nanoTime();
+            boolean result = offer(element, admission.queueTime(queueTime));
+            admission.sojourn(System.nanoTime() - startTime);
+            return result;
+        }
+
+        private boolean offer(E element, long queueTime) {
             try {
                 return super.offer(element, queueTime, TimeUnit.MICROSECONDS);
             } catch (InterruptedException e) {
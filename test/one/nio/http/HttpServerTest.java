@@ -22,6 +22,15 @@ public class HttpServerTest extends HttpServer {
         session.writeResponse(request, response);
     }
 
+    @HttpHandler("/hello/{name}")
+    public Response handleHello(@Param("name") String name, @Param("times") int times) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            sb.append("Hello, ").append(name).append('\n');
+        }
+        return Response.ok(sb.toString());
+    }
+
     @Override
     public void handleDefault(Request request, HttpSession session) throws IOException {
         Response response = Response.ok(Utf8.toBytes("<html><body><pre>Default</pre></body></html>"));
@@ -0,0 +1,112 @@
+package one.nio.http;
+
+import junit.framework.TestCase;
+
+import one.nio.net.ConnectionString;
+import one.nio.util.Utf8;
+
+import java.io.IOException;
+
+public class PathRouterTest extends TestCase {
+    private static final int PORT = 19883;
+
+    public static class RoutingServer extends HttpServer {
+
+        public RoutingServer() throws IOException {
+            super(new ConnectionString("127.0.0.1:" + PORT + "?jmx=false&selectors=1"));
+        }
+
+        @HttpHandler("/users/{id}")
+        public Response getUser(@Param("id") int id, @Param("verbose") Boolean verbose) {
+            return Response.ok("user " + id + " " + verbose);
+        }
+
+        @HttpHandler("/users/me")
+        public Response getMe() {
+            return Response.ok("me");
+        }
+
+        @HttpHandler("/users/{id}/posts/{post}")
+        public void getPost(HttpSession session, @Param("post") String post, Request request,
+                            @Param("id") long id, @Param("limit") double limit) throws IOException {
+            session.writeResponse(request, Response.ok("post " + id + " " + post + " " + limit));
+        }
+
+        @HttpHandler("/search")
+        public Response search(@Param("q") String q, @Param("page") Integer page, @Param("exact") boolean exact) {
+            return Response.ok(q + " " + page + " " + exact);
+        }
+    }
+
+    private static String body(Response response) {
+        return Utf8.toString(response.getBody());
+    }
+
+    public void testRouting() throws Exception {
+        RoutingServer server = new RoutingServer();
+        server.start();
+        HttpClient client = new HttpClient(new ConnectionString("127.0.0.1:" + PORT));
+        try {
+            assertEquals("user 42 null", body(client.get("/users/42")));
+            assertEquals("user 7 true", body(client.get("/users/7?verbose")));
+            assertEquals("me", body(client.get("/users/me")));
+            assertEquals("post 3 hello world 2.5", body(client.get("/users/3/posts/hello%20world?limit=2.5")));
+            assertEquals("a b null false", body(client.get("/search?qq=x&q=a+b&exact=0")));
+            assertEquals("x 2 true", body(client.get("/search?page=2&q=x&exact=true")));
+
+            assertEquals(404, client.get("/users").getStatus());
+            assertEquals(404, client.get("/users/3/posts").getStatus());
+            assertEquals(404, client.get("/users/3/posts/").getStatus());
+        } finally {
+            client.close();
+            server.stop();
+        }
+    }
+
+    public void testBadParameters() throws Exception {
+        RoutingServer server = new RoutingServer();
+        server.start();
+        HttpClient client = new HttpClient(new ConnectionString("127.0.0.1:" + PORT));
+        try {
+            Response response = client.get("/users/abc");
+            assertEquals(400, response.getStatus());
+            assertEquals("Invalid parameter: id", body(response));
+
+            response = client.get("/users/3/posts/1");
+            assertEquals(400, response.getStatus());
+            assertEquals("Missing parameter: limit", body(response));
+        } finally {
+            client.close();
+            server.stop();
+        }
+    }
+
+    public void testPrecedence() {
+        RequestHandler literal = handler();
+        RequestHandler parameter = handler();
+        RequestHandler deep = handler();
+
+        PathRouter router = new PathRouter();
+        router.put("/a/b/c", literal);
+        router.put("/a/{x}/d", parameter);
+        router.put("/", deep);
+
+        // The literal branch /a/b is tried first, then backtracked to {x}
+        Request request = new Request(Request.METHOD_GET, "/a/b/d?y=1", 1);
+        assertSame(parameter, router.find(request));
+        assertEquals("b", request.getPathParameter("x"));
+
+        assertSame(literal, router.find(new Request(Request.METHOD_GET, "/a/b/c", 1)));
+        assertSame(deep, router.find(new Request(Request.METHOD_GET, "/?a", 1)));
+        assertNull(router.find(new Request(Request.METHOD_GET, "/a//d", 1)));
+        assertNull(router.find(new Request(Request.METHOD_GET, "*", 1)));
+    }
+
+    private static RequestHandler handler() {
+        return new RequestHandler() {
+            @Override
+            public void handleRequest(Request request, HttpSession session) {
+            }
+        };
+    }
+}
@@ -0,0 +1,153 @@
+package one.nio.http;
+
+import junit.framework.TestCase;
+
+import one.nio.net.ConnectionString;
+import one.nio.net.Socket;
+import one.nio.util.Utf8;
+
+import java.io.IOException;
+import java.util.Random;
+
+public class PipeliningTest extends TestCase {
+    private static final int PORT = 19882;
+
+    // Answers /delay?ms=N from a separate thread after N milliseconds, so responses complete out of order
+    public static class DelayServer extends HttpServer {
+
+        public DelayServer() throws IOException {
+            super(new ConnectionString("127.0.0.1:" + PORT + "?jmx=false&selectors=1"));
+        }
+
+        @HttpHandler("/delay")
+        public void handleDelay(final Request request, final HttpSession session) {
+            final int delay = Integer.parseInt(request.getParameter("ms="));
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(delay);
+                        session.writeResponse(request, Response.ok(request.getParameter("id=")));
+                    } catch (Exception e) {
+                        session.close();
+                    }
+                }
+            }.start();
+        }
+
+        @HttpHandler("/forbidden")
+        public void handleForbidden(Request request, HttpSession session) throws IOException {
+            session.writeError(request, Response.FORBIDDEN, null);
+        }
+
+        @HttpHandler("/deny")
+        public void handleDeny(final Request request, final HttpSession session) {
+            final int delay = Integer.parseInt(request.getParameter("ms="));
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(delay);
+                        session.writeError(request, Response.FORBIDDEN, null);
+                    } catch (Exception e) {
+                        session.close();
+                    }
+                }
+            }.start();
+        }
+
+        @HttpHandler("/now")
+        public void handleNow(Request request, HttpSession session) throws IOException {
+            session.writeResponse(request, Response.ok(request.getParameter("id=")));
+        }
+    }
+
+    private DelayServer server;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new DelayServer();
+        server.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.stop();
+    }
+
+    public void testOrder() throws Exception {
+        Socket socket = Socket.create();
+        socket.setTimeout(5000);
+        socket.connect("127.0.0.1", PORT);
+        try {
+            Random random = new Random(1);
+            StringBuilder requests = new StringBuilder();
+            int count = 100;
+            for (int id = 0; id < count; id++) {
+                if (random.nextBoolean()) {
+                    requests.append("GET /delay?id=").append(id).append("&ms=").append(random.nextInt(50));
+                } else {
+                    requests.append("GET /now?id=").append(id);
+                }
+                requests.append(" HTTP/1.1\r\n\r\n");
+            }
+            byte[] bytes = Utf8.toBytes(requests.toString());
+            socket.writeFully(bytes, 0, bytes.length);
+
+            HttpClient.ResponseReader reader = new HttpClient.ResponseReader(socket, 8000);
+            for (int id = 0; id < count; id++) {
+                assertEquals(Integer.toString(id), Utf8.toString(reader.readResponse(Request.METHOD_GET).getBody()));
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    public void testErrorAfterPendingResponses() throws Exception {
+        Socket socket = Socket.create();
+        socket.setTimeout(5000);
+        socket.connect("127.0.0.1", PORT);
+        try {
+            byte[] bytes = Utf8.toBytes("GET /delay?id=1&ms=30 HTTP/1.1\r\n\r\nBAD\r\n\r\n");
+            socket.writeFully(bytes, 0, bytes.length);
+
+            HttpClient.ResponseReader reader = new HttpClient.ResponseReader(socket, 8000);
+            assertEquals("1", Utf8.toString(reader.readResponse(Request.METHOD_GET).getBody()));
+            assertEquals(400, reader.readResponse(Request.METHOD_GET).getStatus());
+        } finally {
+            socket.close();
+        }
+    }
+
+    public void testErrorFromHandler() throws Exception {
+        Socket socket = Socket.create();
+        socket.setTimeout(5000);
+        socket.connect("127.0.0.1", PORT);
+        try {
+            byte[] bytes = Utf8.toBytes("GET /delay?id=1&ms=30 HTTP/1.1\r\n\r\nGET /forbidden HTTP/1.1\r\n\r\n");
+            socket.writeFully(bytes, 0, bytes.length);
+
+            HttpClient.ResponseReader reader = new HttpClient.ResponseReader(socket, 8000);
+            assertEquals("1", Utf8.toString(reader.readResponse(Request.METHOD_GET).getBody()));
+            assertEquals(403, reader.readResponse(Request.METHOD_GET).getStatus());
+        } finally {
+            socket.close();
+        }
+    }
+
+    public void testErrorFromWorker() throws Exception {
+        Socket socket = Socket.create();
+        socket.setTimeout(5000);
+        socket.connect("127.0.0.1", PORT);
+        try {
+            byte[] bytes = Utf8.toBytes("GET /delay?id=1&ms=50 HTTP/1.1\r\n\r\nGET /deny?ms=10 HTTP/1.1\r\n\r\n");
+            socket.writeFully(bytes, 0, bytes.length);
+
+            HttpClient.ResponseReader reader = new HttpClient.ResponseReader(socket, 8000);
+            assertEquals("1", Utf8.toString(reader.readResponse(Request.METHOD_GET).getBody()));
+            assertEquals(403, reader.readResponse(Request.METHOD_GET).getStatus());
+        } finally {
+            socket.close();
+        }
+    }
+}
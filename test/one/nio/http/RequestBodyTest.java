@@ -0,0 +1,168 @@
+package one.nio.http;
+
+import junit.framework.TestCase;
+
+import one.nio.net.ConnectionString;
+import one.nio.net.Socket;
+import one.nio.util.Utf8;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class RequestBodyTest extends TestCase {
+    private static final int PORT = 19881;
+
+    public static class BodyServer extends HttpServer {
+
+        public BodyServer() throws IOException {
+            super(new ConnectionString("127.0.0.1:" + PORT + "?jmx=false&selectors=1&maxBodySize=100000"));
+        }
+
+        @HttpHandler("/echo")
+        public void handleEcho(Request request, HttpSession session) throws IOException {
+            byte[] body = request.getBody();
+            session.writeResponse(request, Response.ok(body == null ? Response.EMPTY : body));
+        }
+
+        @Override
+        public BodyConsumer createBodyConsumer(final Request request, final HttpSession session) {
+            if (!request.getURI().equals("/upload")) {
+                return null;
+            }
+
+            // Replies with the number and the checksum of the bytes received
+            return new BodyConsumer() {
+                long count;
+                long sum;
+
+                @Override
+                public void onData(byte[] data, int offset, int length) {
+                    for (int i = 0; i < length; i++) {
+                        sum += data[offset + i] & 0xff;
+                    }
+                    count += length;
+                }
+
+                @Override
+                public void onComplete() throws IOException {
+                    session.writeResponse(request, Response.ok(count + " " + sum));
+                }
+            };
+        }
+    }
+
+    private BodyServer server;
+    private Socket socket;
+    private HttpClient.ResponseReader reader;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new BodyServer();
+        server.start();
+        socket = Socket.create();
+        socket.setTimeout(5000);
+        socket.connect("127.0.0.1", PORT);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        socket.close();
+        server.stop();
+    }
+
+    private void send(String s) throws IOException {
+        send(Utf8.toBytes(s));
+    }
+
+    private void send(byte[] data) throws IOException {
+        socket.writeFully(data, 0, data.length);
+    }
+
+    private Response receive() throws IOException, HttpException {
+        return receive(Request.METHOD_POST);
+    }
+
+    private Response receive(int method) throws IOException, HttpException {
+        if (reader == null) {
+            reader = new HttpClient.ResponseReader(socket, 8000);
+        }
+        return reader.readResponse(method);
+    }
+
+    private static byte[] body(int length) {
+        byte[] body = new byte[length];
+        for (int i = 0; i < length; i++) {
+            body[i] = (byte) (i * 31);
+        }
+        return body;
+    }
+
+    public void testContentLength() throws Exception {
+        send("POST /echo HTTP/1.1\r\nContent-Length: 11\r\n\r\nhello");
+        Thread.sleep(50);
+        send(" world");
+        assertEquals("hello world", Utf8.toString(receive().getBody()));
+    }
+
+    public void testPipelined() throws Exception {
+        send("POST /echo HTTP/1.1\r\nContent-Length: 3\r\n\r\nabc" +
+             "GET /echo HTTP/1.1\r\n\r\n" +
+             "POST /echo HTTP/1.1\r\nContent-Length: 2\r\n\r\nde");
+        assertEquals("abc", Utf8.toString(receive().getBody()));
+        assertEquals(0, receive().getBody().length);
+        assertEquals("de", Utf8.toString(receive().getBody()));
+    }
+
+    public void testLargeBuffered() throws Exception {
+        byte[] body = body(90000);
+        send("POST /echo HTTP/1.1\r\nContent-Length: " + body.length + "\r\n\r\n");
+        send(body);
+        assertTrue(Arrays.equals(body, receive().getBody()));
+    }
+
+    public void testChunked() throws Exception {
+        send("POST /echo HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n" +
+             "5\r\nhello\r\n6;ext=1\r\n wor");
+        Thread.sleep(50);
+        send("ld\r\n0\r\nTrailer: x\r\n\r\n");
+        assertEquals("hello world", Utf8.toString(receive().getBody()));
+    }
+
+    public void testTooLarge() throws Exception {
+        send("POST /echo HTTP/1.1\r\nContent-Length: 200000\r\n\r\n");
+        assertEquals(413, receive().getStatus());
+    }
+
+    public void testExpectContinue() throws Exception {
+        send("POST /echo HTTP/1.1\r\nContent-Length: 2\r\nExpect: 100-continue\r\n\r\n");
+        // Interim response without a body
+        assertEquals(100, receive(Request.METHOD_HEAD).getStatus());
+        send("ok");
+        assertEquals("ok", Utf8.toString(receive().getBody()));
+    }
+
+    public void testExpectContinueStreamed() throws Exception {
+        send("POST /upload HTTP/1.1\r\nContent-Length: 2\r\nExpect: 100-continue\r\n\r\n");
+        assertEquals(100, receive(Request.METHOD_HEAD).getStatus());
+        send("ab");
+        assertEquals("2 195", Utf8.toString(receive().getBody()));
+    }
+
+    public void testStreamed() throws Exception {
+        byte[] body = body(5000000);
+        long sum = 0;
+        for (byte b : body) {
+            sum += b & 0xff;
+        }
+
+        send("POST /upload HTTP/1.1\r\nContent-Length: " + body.length + "\r\n\r\n");
+        send(body);
+        assertEquals(body.length + " " + sum, Utf8.toString(receive().getBody()));
+
+        send("POST /upload HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n" +
+             Integer.toHexString(body.length) + "\r\n");
+        send(body);
+        send("\r\n0\r\n\r\n");
+        assertEquals(body.length + " " + sum, Utf8.toString(receive().getBody()));
+    }
+}
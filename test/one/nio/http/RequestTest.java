@@ -0,0 +1,71 @@
+package one.nio.http;
+
+import junit.framework.TestCase;
+
+import one.nio.util.Utf8;
+
+public class RequestTest extends TestCase {
+    private static final String[] HEADERS = {
+            "Host: example.com",
+            "X-Forwarded-For: 10.0.0.1",
+            "Connection: Close",
+            "Content-Length: 42",
+            "Accept: */*"
+    };
+
+    private static Request parsed() {
+        Request request = new Request(Request.METHOD_GET, "/path?x=1", 32);
+        byte[] buffer = new byte[100];
+        for (String header : HEADERS) {
+            // Headers arrive at arbitrary offsets of a shared read buffer that is reused afterwards
+            int offset = header.length() % 7;
+            Utf8.write(header, buffer, offset);
+            request.addHeader(buffer, offset, header.length());
+            Utf8.write("garbage garbage garbage", buffer, 0);
+        }
+        return request;
+    }
+
+    private static Request built() {
+        Request request = new Request(Request.METHOD_GET, "/path?x=1", 32);
+        for (String header : HEADERS) {
+            request.addHeader(header);
+        }
+        return request;
+    }
+
+    public void testGetHeader() {
+        for (Request request : new Request[]{parsed(), built(), new Request(parsed())}) {
+            assertEquals("example.com", request.getHeader("Host: "));
+            assertEquals("10.0.0.1", request.getHeader("X-Forwarded-For: "));
+            assertEquals("Close", request.getHeader("Connection: "));
+            assertEquals("42", request.getHeader("Content-Length: "));
+            assertEquals("*/*", request.getHeader("Accept: "));
+            assertEquals(" */*", request.getHeader("Accept:"));
+            assertNull(request.getHeader("Transfer-Encoding: "));
+            assertNull(request.getHeader("User-Agent: "));
+        }
+    }
+
+    public void testHeaderEquals() {
+        for (Request request : new Request[]{parsed(), built()}) {
+            assertTrue(request.headerEqualsIgnoreCase("Connection: ", "close"));
+            assertTrue(request.headerEqualsIgnoreCase("Host: ", "EXAMPLE.com"));
+            assertFalse(request.headerEqualsIgnoreCase("Connection: ", "clos"));
+            assertFalse(request.headerEqualsIgnoreCase("Content-Length: ", "4"));
+            assertFalse(request.headerEqualsIgnoreCase("Expect: ", "100-continue"));
+        }
+    }
+
+    public void testMixed() {
+        Request request = parsed();
+        request.addHeader("Expect: 100-continue");
+        assertTrue(request.headerEqualsIgnoreCase("Expect: ", "100-Continue"));
+        assertEquals("example.com", request.getHeader("Host: "));
+    }
+
+    public void testToBytes() {
+        assertEquals(built().toString(), parsed().toString());
+        assertTrue(parsed().toString().startsWith("GET /path?x=1 HTTP/1.1\r\nHost: example.com\r\n"));
+    }
+}
@@ -28,6 +28,15 @@ public class ConnectionStringTest extends TestCase {
         assertEquals("[::1]", conn.getHost());
         assertEquals(12345, conn.getPort());
         assertEquals(true, conn.getBooleanParam(":", false));
+
+        conn = new ConnectionString("unix:/var/run/app.sock?timeout=100");
+        assertEquals("unix:/var/run/app.sock", conn.getHost());
+        assertEquals(0, conn.getPort());
+        assertEquals(100, conn.getIntParam("timeout", 0));
+
+        conn = new ConnectionString("socket://unix:/tmp/a:b.sock");
+        assertEquals("unix:/tmp/a:b.sock", conn.getHost());
+        assertEquals(0, conn.getPort());
     }
 
     public static void main(String[] args) throws Exception {
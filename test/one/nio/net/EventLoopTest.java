@@ -0,0 +1,116 @@
+package one.nio.net;
+
+import junit.framework.TestCase;
+
+import one.nio.server.Server;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class EventLoopTest extends TestCase {
+    private static final int PORT = 19879;
+    private static final int SESSIONS = 200;
+    private static final byte[] PING = "ping".getBytes();
+
+    static class EchoServer extends Server {
+
+        EchoServer() throws IOException {
+            super(new ConnectionString("127.0.0.1:" + PORT + "?jmx=false"));
+        }
+
+        @Override
+        public Session createSession(Socket socket) {
+            return new Session(socket) {
+                @Override
+                protected void processRead(byte[] buffer) throws Exception {
+                    int bytes = read(buffer, 0, buffer.length);
+                    if (bytes > 0) {
+                        write(buffer, 0, bytes);
+                    }
+                }
+            };
+        }
+    }
+
+    static class PingSession extends ClientSession {
+        final AtomicInteger connected;
+        final CountDownLatch done;
+        int received;
+
+        PingSession(AtomicInteger connected, CountDownLatch done) throws IOException {
+            super(Socket.create());
+            this.connected = connected;
+            this.done = done;
+        }
+
+        @Override
+        protected void onConnected() {
+            connected.incrementAndGet();
+        }
+
+        @Override
+        protected void onConnectFailed(IOException e) {
+            done.countDown();
+        }
+
+        @Override
+        protected void processRead(byte[] buffer) throws Exception {
+            received += read(buffer, 0, buffer.length);
+            if (received == PING.length) {
+                close();
+                done.countDown();
+            }
+        }
+    }
+
+    public void testEcho() throws Exception {
+        Server server = new EchoServer();
+        server.start();
+        EventLoop loop = new EventLoop("Test Client", 2);
+        try {
+            AtomicInteger connected = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(SESSIONS);
+            for (int i = 0; i < SESSIONS; i++) {
+                PingSession session = new PingSession(connected, done);
+                loop.connect(session, "127.0.0.1", PORT, 5000);
+                // Queued until the connection is established
+                session.write(PING, 0, PING.length);
+            }
+
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(SESSIONS, connected.get());
+        } finally {
+            loop.close();
+            server.stop();
+        }
+    }
+
+    public void testRefused() throws Exception {
+        EventLoop loop = new EventLoop("Test Client", 1);
+        try {
+            final CountDownLatch done = new CountDownLatch(1);
+            final IOException[] error = new IOException[1];
+            ClientSession session = new ClientSession(Socket.create()) {
+                @Override
+                protected void onConnectFailed(IOException e) {
+                    error[0] = e;
+                    done.countDown();
+                }
+            };
+
+            try {
+                loop.connect(session, "127.0.0.1", PORT + 1, 5000);
+                assertTrue(done.await(10, TimeUnit.SECONDS));
+            } catch (ConnectException e) {
+                error[0] = e;
+            }
+            assertTrue(error[0] instanceof ConnectException);
+            assertFalse(session.socket.isOpen());
+        } finally {
+            loop.close();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package one.nio.net;
+
+import junit.framework.TestCase;
+
+import one.nio.os.NativeLibrary;
+
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+
+public class SelectorAllocationTest extends TestCase {
+    private static final int WARMUP_LOOPS = 200000;
+    private static final int MEASURED_LOOPS = 100000;
+
+    // Even one allocated byte per loop would exceed it; what remains is occasional JIT or GC noise
+    private static final long MAX_ALLOCATED_BYTES = 16384;
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void loop(Selector selector, Socket client, byte[] request, byte[] buffer, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            client.write(request, 0, request.length);
+            for (Iterator<Session> selectedSessions = selector.select(); selectedSessions.hasNext(); ) {
+                selectedSessions.next().process(buffer);
+            }
+        }
+    }
+
+    private static long allocatedInLoops(Selector selector) throws Exception {
+        Socket server = Socket.createServerSocket();
+        server.setReuseAddr(true);
+        server.bind("127.0.0.1", 0, 16);
+
+        Socket client = Socket.create();
+        client.connect("127.0.0.1", server.getLocalAddress().getPort());
+        Socket accepted = server.accept();
+        accepted.setBlocking(false);
+        selector.register(new Session(accepted));
+
+        try {
+            byte[] request = new byte[16];
+            byte[] buffer = new byte[1024];
+            loop(selector, client, request, buffer, WARMUP_LOOPS);
+
+            long overhead = -allocatedBytes() + allocatedBytes();
+            long startBytes = allocatedBytes();
+            loop(selector, client, request, buffer, MEASURED_LOOPS);
+            long endBytes = allocatedBytes();
+
+            return endBytes - startBytes - overhead;
+        } finally {
+            selector.close();
+            client.close();
+            accepted.close();
+            server.close();
+        }
+    }
+
+    private static void assertAllocationFree(Selector selector) throws Exception {
+        long allocated = allocatedInLoops(selector);
+        assertTrue("Allocated " + allocated + " bytes in " + MEASURED_LOOPS + " loops", allocated < MAX_ALLOCATED_BYTES);
+    }
+
+    public void testNativeSelector() throws Exception {
+        if (NativeLibrary.IS_SUPPORTED) {
+            assertAllocationFree(new NativeSelector(false));
+        }
+    }
+
+    public void testEdgeTriggeredSelector() throws Exception {
+        if (NativeLibrary.IS_SUPPORTED) {
+            assertAllocationFree(new NativeSelector(true));
+        }
+    }
+
+    public void testIoUringSelector() throws Exception {
+        if (IoUringSelector.IS_SUPPORTED) {
+            assertAllocationFree(new IoUringSelector());
+        }
+    }
+}
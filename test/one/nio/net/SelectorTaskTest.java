@@ -0,0 +1,91 @@
+package one.nio.net;
+
+import junit.framework.TestCase;
+
+import one.nio.os.NativeLibrary;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SelectorTaskTest extends TestCase {
+    private static final int PRODUCERS = 4;
+    private static final int TASKS_PER_PRODUCER = 100000;
+
+    private static void runTasks(final Selector selector) throws Exception {
+        final AtomicInteger executed = new AtomicInteger();
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                executed.incrementAndGet();
+            }
+        };
+
+        Thread[] producers = new Thread[PRODUCERS];
+        for (int i = 0; i < producers.length; i++) {
+            producers[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < TASKS_PER_PRODUCER; j++) {
+                        selector.execute(task);
+                    }
+                }
+            };
+            producers[i].start();
+        }
+
+        // Nothing is registered: select() returns only when woken up by execute()
+        long deadline = System.currentTimeMillis() + 30000;
+        while (executed.get() < PRODUCERS * TASKS_PER_PRODUCER && System.currentTimeMillis() < deadline) {
+            for (Iterator<Session> selectedSessions = selector.select(); selectedSessions.hasNext(); ) {
+                selectedSessions.next();
+            }
+            for (Runnable next; (next = selector.nextTask()) != null; ) {
+                next.run();
+            }
+        }
+
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        selector.close();
+
+        assertEquals(PRODUCERS * TASKS_PER_PRODUCER, executed.get());
+    }
+
+    public void testNativeSelector() throws Exception {
+        if (NativeLibrary.IS_SUPPORTED) {
+            runTasks(new NativeSelector(false));
+        }
+    }
+
+    public void testIoUringSelector() throws Exception {
+        if (IoUringSelector.IS_SUPPORTED) {
+            runTasks(new IoUringSelector());
+        }
+    }
+
+    public void testJavaSelector() throws Exception {
+        runTasks(new JavaSelector());
+    }
+
+    public void testSessionForwarding() throws Exception {
+        if (!NativeLibrary.IS_SUPPORTED) {
+            return;
+        }
+
+        Selector retired = new NativeSelector(false);
+        Selector successor = new NativeSelector(false);
+        retired.forwardSessions(successor);
+
+        // A session registered through a stale reference ends up on the successor
+        Session session = new Session(Socket.create());
+        retired.register(session);
+        assertEquals(0, retired.size());
+        assertEquals(1, successor.size());
+        assertSame(successor, session.selector);
+
+        session.close();
+        retired.close();
+        successor.close();
+    }
+}
@@ -1,6 +1,8 @@
 package one.nio.net;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.BindException;
 
 public class SocketTest {
 
@@ -27,8 +29,46 @@ public class SocketTest {
         s.close();
     }
 
+    private static void testUnix() throws IOException {
+        String path = System.getProperty("java.io.tmpdir") + "/one-nio-test.sock";
+        Socket server = Socket.createUnixSocket();
+        server.bindUnix(path, 1, 0600);
+
+        Socket s = Socket.createUnixSocket();
+        s.setTimeout(3000);
+        s.connectUnix(path);
+        Socket accepted = server.accept();
+        System.out.println("connected to " + path + ", remote address " + s.getRemoteAddress());
+        System.out.println("peer uid " + accepted.getPeerUid());
+
+        byte[] b = "ping".getBytes();
+        s.writeFully(b, 0, b.length);
+        accepted.readFully(b, 0, b.length);
+        System.out.println("read " + new String(b));
+
+        accepted.close();
+        s.close();
+
+        Socket duplicate = Socket.createUnixSocket();
+        try {
+            duplicate.bindUnix(path, 1);
+            System.out.println("bound the path of a live server");
+        } catch (BindException e) {
+            System.out.println("path in use: " + e.getMessage());
+        }
+
+        // The socket file remains after close and is replaced
+        server.close();
+        duplicate.bindUnix(path, 1);
+        System.out.println("rebound " + path);
+
+        duplicate.close();
+        new File(path).delete();
+    }
+
     public static void main(String[] args) throws Exception {
         testIPv4();
         testIPv6();
+        testUnix();
     }
 }
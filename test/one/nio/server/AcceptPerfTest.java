@@ -0,0 +1,65 @@
+package one.nio.server;
+
+import one.nio.net.ConnectionString;
+import one.nio.net.Socket;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AcceptPerfTest extends Thread {
+    private static final int PORT         = 19876;
+    private static final int THREAD_COUNT = 8;
+    private static final long RUN_TIME    = 5000;
+
+    private final AtomicLong connections;
+    private final long endTime;
+
+    public AcceptPerfTest(AtomicLong connections, long endTime) {
+        this.connections = connections;
+        this.endTime = endTime;
+    }
+
+    @Override
+    public void run() {
+        byte[] request = new byte[1];
+        while (System.currentTimeMillis() < endTime) {
+            try {
+                Socket socket = Socket.create();
+                socket.connect("127.0.0.1", PORT);
+                socket.writeFully(request, 0, request.length);
+                socket.close();
+                connections.incrementAndGet();
+            } catch (Exception e) {
+                // Ephemeral ports exhausted or connection refused under the storm
+            }
+        }
+    }
+
+    private static void runTest(String params) throws Exception {
+        Server server = new Server(new ConnectionString("127.0.0.1:" + PORT + "?jmx=false&" + params));
+        server.start();
+
+        AtomicLong connections = new AtomicLong();
+        long startTime = System.currentTimeMillis();
+        Thread[] threads = new Thread[THREAD_COUNT];
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            threads[i] = new AcceptPerfTest(connections, startTime + RUN_TIME);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long endTime = System.currentTimeMillis();
+
+        System.out.println(params + ": " + connections.get() * 1000 / (endTime - startTime) + " conn/s, " +
+                server.getAcceptedSessions() + " accepted");
+        server.stop();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String selectors = "selectors=" + (args.length > 0 ? args[0] : "4");
+        runTest(selectors);
+        runTest(selectors + "&reusePort=true");
+        runTest(selectors);
+        runTest(selectors + "&reusePort=true");
+    }
+}
@@ -0,0 +1,51 @@
+package one.nio.server;
+
+import junit.framework.TestCase;
+
+import one.nio.net.ConnectionString;
+
+public class AdmissionControllerTest extends TestCase {
+    private static final long MS = 1000000L;
+
+    private static void nextInterval(AdmissionController admission, long sojourn) throws InterruptedException {
+        Thread.sleep(15);
+        admission.sojourn(sojourn);
+    }
+
+    public void testOverload() throws Exception {
+        AdmissionController admission = new AdmissionController(5, 10);
+        assertFalse(admission.isOverloaded());
+        assertEquals(0, admission.queueTime(0));
+        assertEquals(20000, admission.queueTime(20000));
+
+        // A standing queue: no request waited less than the target during the interval
+        admission.sojourn(8 * MS);
+        nextInterval(admission, 6 * MS);
+        assertTrue(admission.isOverloaded());
+        assertEquals(6000, admission.getMinSojourn());
+        assertEquals(0, admission.queueTime(0));
+        assertEquals(5000, admission.queueTime(20000));
+        assertEquals(1000, admission.queueTime(1000));
+
+        // Rejected requests waited exactly the target, overload persists
+        nextInterval(admission, 5 * MS);
+        assertTrue(admission.isOverloaded());
+
+        // One request got a worker quickly: the queue has drained
+        admission.sojourn(5 * MS);
+        admission.sojourn(MS / 10);
+        nextInterval(admission, 5 * MS);
+        assertFalse(admission.isOverloaded());
+        assertEquals(100, admission.getMinSojourn());
+        assertEquals(20000, admission.queueTime(20000));
+    }
+
+    public void testConfiguration() {
+        assertNull(Server.createAdmission(new ConnectionString("127.0.0.1:8080")));
+        assertNotNull(Server.createAdmission(new ConnectionString("127.0.0.1:8080?admissionTarget=5&queueTime=20000")));
+
+        // Requests are never queued without queueTime, so there is nothing to shorten
+        assertNull(Server.createAdmission(new ConnectionString("127.0.0.1:8080?admissionTarget=5")));
+        assertNull(Server.createAdmission(new ConnectionString("127.0.0.1:8080?admissionTarget=5&queueTime=0")));
+    }
+}
@@ -0,0 +1,109 @@
+package one.nio.server;
+
+import one.nio.net.ConnectionString;
+import one.nio.net.DatagramSession;
+import one.nio.net.Datagrams;
+import one.nio.net.Socket;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Fire-and-forget ingestion: clients send batches of small datagrams, the server counts them
+// and answers every 1000th one, so that the reply path is exercised as well
+public class DatagramPerfTest extends Thread {
+    private static final int PORT         = 19878;
+    private static final int CLIENT_COUNT = 4;
+    private static final int BATCH_SIZE   = 64;
+    private static final long RUN_TIME    = 5000;
+
+    static final AtomicLong totalReceived = new AtomicLong();
+
+    static class CountingServer extends Server {
+
+        CountingServer(ConnectionString conn) throws IOException {
+            super(conn);
+        }
+
+        @Override
+        public DatagramSession createDatagramSession(Socket socket) {
+            return new CountingSession(socket);
+        }
+    }
+
+    static class CountingSession extends DatagramSession {
+        private final byte[] data = new byte[DEFAULT_MAX_SIZE];
+
+        CountingSession(Socket socket) {
+            super(socket);
+        }
+
+        @Override
+        protected void processDatagram(Datagrams datagrams, int index) throws Exception {
+            if (totalReceived.incrementAndGet() % 1000 == 0) {
+                int length = datagrams.get(index, data, 0);
+                reply(data, 0, length, datagrams, index);
+            }
+        }
+    }
+
+    private final AtomicLong sent;
+    private final AtomicLong replies;
+    private final long endTime;
+
+    public DatagramPerfTest(AtomicLong sent, AtomicLong replies, long endTime) {
+        this.sent = sent;
+        this.replies = replies;
+        this.endTime = endTime;
+    }
+
+    @Override
+    public void run() {
+        byte[] metric = "requests.count:1|c".getBytes();
+        try {
+            Socket socket = Socket.createDatagramSocket();
+            socket.connect("127.0.0.1", PORT);
+            socket.setBlocking(false);
+
+            Datagrams batch = new Datagrams(BATCH_SIZE, 64);
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                batch.add(metric, 0, metric.length, (InetSocketAddress) null);
+            }
+            Datagrams answers = new Datagrams(BATCH_SIZE, 64);
+
+            while (System.currentTimeMillis() < endTime) {
+                sent.addAndGet(socket.send(batch, 0));
+                replies.addAndGet(socket.receive(answers));
+            }
+            socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String params = args.length > 0 ? args[0] : "selectors=2";
+        Server server = new CountingServer(new ConnectionString("127.0.0.1:" + PORT + "?jmx=false&datagram=true&buffers=4194304&" + params));
+        server.start();
+
+        AtomicLong sent = new AtomicLong();
+        AtomicLong replies = new AtomicLong();
+        long startTime = System.currentTimeMillis();
+        Thread[] threads = new Thread[CLIENT_COUNT];
+        for (int i = 0; i < CLIENT_COUNT; i++) {
+            threads[i] = new DatagramPerfTest(sent, replies, startTime + RUN_TIME);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Thread.sleep(100);
+        long time = System.currentTimeMillis() - startTime;
+
+        System.out.println(params + ": " + sent.get() * 1000 / time + " sent/s, " +
+                totalReceived.get() * 1000 / time + " received/s, " +
+                replies.get() + " replies");
+
+        server.stop();
+    }
+}
@@ -0,0 +1,134 @@
+package one.nio.server;
+
+import junit.framework.TestCase;
+
+import one.nio.net.ConnectionString;
+import one.nio.net.Session;
+import one.nio.net.Socket;
+import one.nio.os.NativeLibrary;
+
+import java.io.IOException;
+
+public class HandoffTest extends TestCase {
+    private static final int PORT = 19880;
+    private static final String HANDOFF_PATH = "/tmp/one-nio-handoff-test.sock";
+
+    // Replies to every byte with the generation of the server
+    static class GenerationServer extends Server {
+        final byte generation;
+
+        GenerationServer(String params, int generation) throws IOException {
+            super(new ConnectionString("127.0.0.1:" + PORT + "?jmx=false&selectors=2&handoff=" + HANDOFF_PATH +
+                    "&handoffSessions=true" + params));
+            this.generation = (byte) generation;
+        }
+
+        @Override
+        public Session createSession(Socket socket) {
+            return new Session(socket) {
+                @Override
+                protected void processRead(byte[] buffer) throws Exception {
+                    int bytes = read(buffer, 0, buffer.length);
+                    for (int i = 0; i < bytes; i++) {
+                        write(new byte[]{generation}, 0, 1);
+                    }
+                }
+            };
+        }
+    }
+
+    private static byte ask(Socket socket) throws IOException {
+        byte[] b = new byte[1];
+        socket.writeFully(b, 0, 1);
+        socket.readFully(b, 0, 1);
+        return b[0];
+    }
+
+    private static Socket connect() throws IOException {
+        Socket socket = Socket.create();
+        socket.setTimeout(5000);
+        socket.connect("127.0.0.1", PORT);
+        return socket;
+    }
+
+    private static void handoff(String params) throws Exception {
+        GenerationServer first = new GenerationServer(params, 1);
+        first.start();
+
+        Socket established = connect();
+        assertEquals(1, ask(established));
+
+        // Connects before the takeover; queued in the shared backlog or accepted by the first server
+        GenerationServer second = new GenerationServer(params, 2);
+        Socket early = connect();
+        second.start();
+
+        try {
+            byte answer = ask(early);
+            assertTrue(answer == 1 || answer == 2);
+
+            // The idle session continues in the new server
+            assertEquals(2, ask(established));
+
+            Socket late = connect();
+            assertEquals(2, ask(late));
+            late.close();
+        } finally {
+            early.close();
+            established.close();
+            first.stop();
+        }
+
+        // The first server is gone, the listening socket is not
+        Socket afterStop = connect();
+        assertEquals(2, ask(afterStop));
+        afterStop.close();
+        second.stop();
+    }
+
+    public void testAcceptorThreads() throws Exception {
+        if (NativeLibrary.IS_SUPPORTED) {
+            handoff("");
+        }
+    }
+
+    public void testReusePort() throws Exception {
+        if (NativeLibrary.IS_SUPPORTED) {
+            handoff("&reusePort=true");
+        }
+    }
+
+    public void testFailedSuccessor() throws Exception {
+        if (!NativeLibrary.IS_SUPPORTED) {
+            return;
+        }
+
+        GenerationServer first = new GenerationServer("", 1);
+        first.start();
+        try {
+            try {
+                new GenerationServer("&rebalanceInterval=invalid", 2);
+                fail("Server should not be constructed");
+            } catch (NumberFormatException e) {
+                // Thrown after the listeners have been received
+            }
+
+            Socket socket = connect();
+            assertEquals(1, ask(socket));
+            socket.close();
+
+            // The next successor takes over as usual
+            GenerationServer second = new GenerationServer("", 2);
+            second.start();
+            try {
+                socket = connect();
+                assertEquals(2, ask(socket));
+                socket.close();
+            } finally {
+                second.stop();
+            }
+        } finally {
+            first.stop();
+        }
+    }
+}
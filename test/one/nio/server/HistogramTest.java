@@ -0,0 +1,49 @@
+package one.nio.server;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class HistogramTest extends TestCase {
+
+    public void testBuckets() {
+        for (int i = 0; i < Histogram.BUCKETS; i++) {
+            long lower = Histogram.lowerBound(i);
+            long upper = Histogram.upperBound(i);
+            assertEquals(i, Histogram.bucket(lower));
+            assertEquals(i, Histogram.bucket(upper));
+            if (i > 0) {
+                assertEquals(Histogram.upperBound(i - 1) + 1, lower);
+            }
+        }
+        assertEquals(Histogram.BUCKETS - 1, Histogram.bucket(Long.MAX_VALUE));
+    }
+
+    public void testPercentiles() {
+        Histogram first = new Histogram();
+        Histogram second = new Histogram();
+        Random random = new Random(1);
+        for (int i = 1; i <= 100000; i++) {
+            (random.nextBoolean() ? first : second).record(i);
+        }
+
+        long[] counts = new long[Histogram.BUCKETS];
+        first.addTo(counts);
+        second.addTo(counts);
+        long[] percentiles = Histogram.percentiles(counts);
+
+        long[] expected = {50000, 90000, 99000, 99900, 100000};
+        for (int i = 0; i < expected.length; i++) {
+            assertTrue(percentiles[i] >= expected[i]);
+            assertTrue(percentiles[i] <= expected[i] * 1.125);
+        }
+    }
+
+    public void testEmpty() {
+        long[] percentiles = Histogram.percentiles(new long[Histogram.BUCKETS]);
+        assertEquals(Histogram.PERCENTILES.length + 1, percentiles.length);
+        for (long p : percentiles) {
+            assertEquals(0, p);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package one.nio.server;
+
+import one.nio.net.ConnectionString;
+import one.nio.net.Session;
+import one.nio.net.Socket;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Compares the platform thread pool with virtual workers for handlers blocked on a downstream call.
+// Every request is a single byte answered with 1 on success or 0 if the server rejected it.
+// Virtual workers require JDK 21+; otherwise the server falls back to the platform pool.
+public class VirtualWorkersPerfTest extends Thread {
+    private static final int PORT         = 19877;
+    private static final int CLIENT_COUNT = 2000;
+    private static final long BLOCK_TIME  = 20;
+    private static final long RUN_TIME    = 10000;
+
+    private static final byte[] OK = {1};
+    private static final byte[] REJECTED = {0};
+
+    static class BlockingServer extends Server {
+
+        BlockingServer(ConnectionString conn) throws IOException {
+            super(conn);
+        }
+
+        @Override
+        public Session createSession(Socket socket) {
+            return new BlockingSession(socket, this);
+        }
+    }
+
+    static class BlockingSession extends Session {
+        private final Server server;
+
+        BlockingSession(Socket socket, Server server) {
+            super(socket);
+            this.server = server;
+        }
+
+        @Override
+        protected void processRead(byte[] buffer) throws Exception {
+            int requests = read(buffer, 0, buffer.length);
+            for (int i = 0; i < requests; i++) {
+                try {
+                    server.asyncExecute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                Thread.sleep(BLOCK_TIME);
+                                write(OK, 0, 1);
+                            } catch (Exception e) {
+                                close();
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    server.incRequestsRejected();
+                    write(REJECTED, 0, 1);
+                }
+            }
+        }
+    }
+
+    private final AtomicLong completed;
+    private final AtomicLong failed;
+    private final long endTime;
+
+    public VirtualWorkersPerfTest(AtomicLong completed, AtomicLong failed, long endTime) {
+        this.completed = completed;
+        this.failed = failed;
+        this.endTime = endTime;
+    }
+
+    @Override
+    public void run() {
+        byte[] request = new byte[1];
+        byte[] response = new byte[1];
+        try {
+            Socket socket = Socket.create();
+            socket.connect("127.0.0.1", PORT);
+            while (System.currentTimeMillis() < endTime) {
+                socket.writeFully(request, 0, 1);
+                socket.readFully(response, 0, 1);
+                if (response[0] == 1) {
+                    completed.incrementAndGet();
+                } else {
+                    failed.incrementAndGet();
+                }
+            }
+            socket.close();
+        } catch (Exception e) {
+            failed.incrementAndGet();
+        }
+    }
+
+    private static long rssKB() throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader("/proc/self/status"));
+        try {
+            for (String line; (line = reader.readLine()) != null; ) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.substring(6).replace("kB", "").trim());
+                }
+            }
+            return 0;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void runTest(String params) throws Exception {
+        Server server = new BlockingServer(new ConnectionString("127.0.0.1:" + PORT + "?jmx=false&" + params));
+        server.start();
+
+        ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+        long rssBefore = rssKB();
+
+        AtomicLong completed = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        long startTime = System.currentTimeMillis();
+        Thread[] threads = new Thread[CLIENT_COUNT];
+        for (int i = 0; i < CLIENT_COUNT; i++) {
+            threads[i] = new VirtualWorkersPerfTest(completed, failed, startTime + RUN_TIME);
+            threads[i].start();
+        }
+
+        int maxWorkers = 0;
+        long maxRss = rssBefore;
+        while (System.currentTimeMillis() < startTime + RUN_TIME) {
+            Thread.sleep(100);
+            maxWorkers = Math.max(maxWorkers, server.getWorkers());
+            maxRss = Math.max(maxRss, rssKB());
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long endTime = System.currentTimeMillis();
+
+        System.out.println(params + ": " + completed.get() * 1000 / (endTime - startTime) + " req/s, " +
+                failed.get() + " rejected, " +
+                maxWorkers + " max workers, " +
+                ManagementFactory.getThreadMXBean().getPeakThreadCount() + " peak threads, " +
+                (maxRss - rssBefore) / 1024 + " MB RSS growth");
+
+        server.stop();
+    }
+
+    public static void main(String[] args) throws Exception {
+        runTest("maxWorkers=1000");
+        runTest("workers=virtual");
+        runTest("maxWorkers=1000");
+        runTest("workers=virtual");
+        System.exit(0);
+    }
+}